@@ -0,0 +1,345 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.javac;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.*;
+import guru.nidi.codeassert.AnalyzerException;
+import guru.nidi.codeassert.model.ModelBuilder;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Adds the classes of each compilation unit to the model as soon as javac has analyzed it.
+ * The dependencies are taken from the attributed syntax trees, so no class file is read again.
+ * A class A uses a class B if B is its superclass or interface, if A refers to B by name
+ * or if A accesses a field or method with a receiver of type B.
+ * An annotation with a retention other than source on A or one of its fields and methods is an annotation of A.
+ * Like in class files, nested classes and their outer class use each other and enums use {@code String}.
+ * <p>
+ * As these are the dependencies of the source code, they can differ slightly from the ones in the class files:
+ * Classes only used by code javac generates (e.g. {@code StringBuilder} for string concatenation,
+ * the bootstrap of lambdas or the helper class of a switch over an enum) are missing,
+ * while the types of local variables and classes that only provide inlined constants are included.
+ * Fields, methods and sizes are not recorded.
+ */
+class ModelListener implements TaskListener {
+    private static final String COMPILATION = "COMPILATION";
+
+    private final Trees trees;
+    private final Elements elements;
+    private final Types types;
+    private final File model;
+    private final boolean compilationEvent = hasCompilationEvent();
+    private final Set<TypeElement> pending = new HashSet<>();
+    private final ModelBuilder builder = new ModelBuilder();
+    private CompilationUnitTree last;
+    private boolean failed;
+    private boolean saved;
+
+    ModelListener(JavacTask task, File model) {
+        this.trees = Trees.instance(task);
+        this.elements = task.getElements();
+        this.types = task.getTypes();
+        this.model = model;
+    }
+
+    /**
+     * The end of the whole compilation is only signalled since java 9.
+     */
+    static boolean hasCompilationEvent() {
+        for (final TaskEvent.Kind kind : TaskEvent.Kind.values()) {
+            if (kind.name().equals(COMPILATION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        //nothing
+    }
+
+    /**
+     * All entered top level classes must be generated before the model is saved,
+     * so no model is saved if the compilation fails.
+     * Nested classes are generated before their top level class.
+     */
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() == TaskEvent.Kind.ENTER) {
+            addPending(e.getCompilationUnit());
+        } else if (e.getKind() == TaskEvent.Kind.ANALYZE) {
+            add(e);
+        } else if (e.getKind() == TaskEvent.Kind.GENERATE) {
+            if (pending.remove(e.getTypeElement()) && pending.isEmpty() && !compilationEvent) {
+                save();
+            }
+        } else if (e.getKind().name().equals(COMPILATION) && pending.isEmpty()) {
+            save();
+        }
+    }
+
+    private void addPending(CompilationUnitTree unit) {
+        for (final Tree decl : unit.getTypeDecls()) {
+            if (decl instanceof ClassTree) {
+                final Element elem = trees.getElement(TreePath.getPath(unit, decl));
+                if (elem instanceof TypeElement) {
+                    pending.add((TypeElement) elem);
+                }
+            }
+        }
+    }
+
+    private void add(TaskEvent e) {
+        if (failed) {
+            return;
+        }
+        last = e.getCompilationUnit();
+        try {
+            if (e.getSourceFile().isNameCompatible("package-info", JavaFileObject.Kind.SOURCE)) {
+                addPackageInfo(e.getCompilationUnit());
+            } else {
+                final TreePath path = trees.getPath(e.getTypeElement());
+                if (path != null) {
+                    new Scanner(e.getCompilationUnit()).scan(path, null);
+                }
+            }
+        } catch (RuntimeException ex) {
+            fail("Could not add " + e.getSourceFile().getName() + " to the code-assert model " + model, ex);
+        }
+    }
+
+    private void addPackageInfo(CompilationUnitTree unit) {
+        final List<? extends AnnotationTree> annotations = unit.getPackageAnnotations();
+        if (unit.getPackageName() != null && !annotations.isEmpty()) {
+            final ModelBuilder.Declaration info = builder.declare(
+                    unit.getPackageName() + ".package-info", sourceFile(unit), false);
+            if (info != null) {
+                info.uses(Object.class.getName());
+                final Scanner scanner = new Scanner(unit);
+                scanner.declarations.push(info);
+                for (final AnnotationTree annotation : annotations) {
+                    scanner.scan(new TreePath(new TreePath(unit), annotation), null);
+                }
+            }
+        }
+    }
+
+    private static String sourceFile(CompilationUnitTree unit) {
+        final String name = unit.getSourceFile().getName();
+        return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+    }
+
+    private void save() {
+        if (!saved && !failed) {
+            saved = true;
+            try {
+                builder.build().save(model);
+            } catch (AnalyzerException ex) {
+                fail("Could not save the code-assert model " + model, ex);
+            }
+        }
+    }
+
+    /**
+     * Report the problem as a warning in the last analyzed source file, the compilation does not fail.
+     */
+    private void fail(String problem, Exception ex) {
+        failed = true;
+        if (last == null) {
+            throw new AnalyzerException(problem, ex);
+        }
+        trees.printMessage(Diagnostic.Kind.WARNING, problem + ": " + ex, last, last);
+    }
+
+    /**
+     * Records the dependencies of a top level class and its nested classes.
+     * The declaration of a class that is not included in the model is null, so the stacks allow null.
+     */
+    private class Scanner extends TreePathScanner<Void, Void> {
+        private final CompilationUnitTree unit;
+        final Deque<ModelBuilder.Declaration> declarations = new LinkedList<>();
+        private final Deque<TypeElement> classes = new LinkedList<>();
+
+        Scanner(CompilationUnitTree unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        public Void visitClass(ClassTree tree, Void p) {
+            final TypeElement type = (TypeElement) trees.getElement(getCurrentPath());
+            final String name = binaryName(type);
+            final ModelBuilder.Declaration decl = builder.declare(name, sourceFile(unit),
+                    !type.getModifiers().contains(Modifier.ABSTRACT) && !type.getKind().isInterface());
+            if (decl != null) {
+                if (type.getKind().isInterface()) {
+                    decl.uses(Object.class.getName());
+                } else {
+                    use(decl, type.getSuperclass());
+                }
+                for (final TypeMirror inter : type.getInterfaces()) {
+                    use(decl, inter);
+                }
+                if (type.getKind() == ElementKind.ENUM) {
+                    decl.uses(String.class.getName());
+                }
+            }
+            if (!classes.isEmpty()) {
+                if (decl != null) {
+                    decl.uses(binaryName(classes.peek()));
+                }
+                if (declaration() != null) {
+                    declaration().uses(name);
+                }
+            }
+            declarations.push(decl);
+            classes.push(type);
+            try {
+                return super.visitClass(tree, p);
+            } finally {
+                declarations.pop();
+                classes.pop();
+            }
+        }
+
+        /**
+         * Imports do not appear in class files.
+         */
+        @Override
+        public Void visitImport(ImportTree tree, Void p) {
+            return null;
+        }
+
+        /**
+         * Only annotations that are kept in the class file are recorded,
+         * the ones of parameters and local variables are not.
+         */
+        @Override
+        public Void visitAnnotation(AnnotationTree tree, Void p) {
+            final Element annotation = trees.getElement(new TreePath(getCurrentPath(), tree.getAnnotationType()));
+            if (!(annotation instanceof TypeElement) || !isRetained(annotation) || !isOnDeclaration()) {
+                return null;
+            }
+            final ModelBuilder.Declaration decl = declaration();
+            if (decl != null) {
+                decl.annotatedWith(binaryName((TypeElement) annotation));
+            }
+            return scan(tree.getArguments(), p);
+        }
+
+        private boolean isRetained(Element annotation) {
+            final java.lang.annotation.Retention retention =
+                    annotation.getAnnotation(java.lang.annotation.Retention.class);
+            return retention == null || retention.value() != java.lang.annotation.RetentionPolicy.SOURCE;
+        }
+
+        private boolean isOnDeclaration() {
+            final TreePath modifiers = getCurrentPath().getParentPath();
+            if (modifiers == null || modifiers.getParentPath() == null) {
+                return true;
+            }
+            final TreePath member = modifiers.getParentPath();
+            final Tree.Kind kind = member.getLeaf().getKind();
+            return kind == Tree.Kind.METHOD || member.getLeaf() instanceof ClassTree
+                    || (kind == Tree.Kind.VARIABLE && member.getParentPath().getLeaf() instanceof ClassTree);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree tree, Void p) {
+            final Element elem = trees.getElement(getCurrentPath());
+            if (elem instanceof TypeElement) {
+                use(binaryName((TypeElement) elem));
+            } else if (isMember(elem)) {
+                final TypeElement owner = (TypeElement) elem.getEnclosingElement();
+                if (!isInherited(owner)) {
+                    use(binaryName(owner));
+                }
+            }
+            return super.visitIdentifier(tree, p);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree tree, Void p) {
+            final Element elem = trees.getElement(getCurrentPath());
+            if (elem instanceof TypeElement) {
+                use(binaryName((TypeElement) elem));
+            } else if (isMember(elem)) {
+                final TreePath receiver = new TreePath(getCurrentPath(), tree.getExpression());
+                if (!(trees.getElement(receiver) instanceof TypeElement)) {
+                    final TypeMirror type = trees.getTypeMirror(receiver);
+                    if (type != null) {
+                        final ModelBuilder.Declaration decl = declaration();
+                        if (decl != null) {
+                            use(decl, type);
+                        }
+                    }
+                }
+            }
+            return super.visitMemberSelect(tree, p);
+        }
+
+        private boolean isMember(Element elem) {
+            return elem != null && (elem.getKind().isField() || elem.getKind() == ElementKind.METHOD
+                    || elem.getKind() == ElementKind.CONSTRUCTOR)
+                    && elem.getEnclosingElement() instanceof TypeElement;
+        }
+
+        /**
+         * A member accessed without qualifier is either a member of an enclosing class or statically imported.
+         */
+        private boolean isInherited(TypeElement owner) {
+            final TypeMirror ownerType = types.erasure(owner.asType());
+            for (final TypeElement clazz : classes) {
+                if (types.isSubtype(types.erasure(clazz.asType()), ownerType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ModelBuilder.Declaration declaration() {
+            return declarations.peek();
+        }
+
+        private void use(String className) {
+            final ModelBuilder.Declaration decl = declaration();
+            if (decl != null) {
+                decl.uses(className);
+            }
+        }
+
+        private void use(ModelBuilder.Declaration decl, TypeMirror type) {
+            final TypeMirror erased = types.erasure(type);
+            if (erased.getKind() == TypeKind.DECLARED) {
+                decl.uses(binaryName((TypeElement) types.asElement(erased)));
+            }
+        }
+
+        private String binaryName(TypeElement type) {
+            return elements.getBinaryName(type).toString();
+        }
+    }
+}
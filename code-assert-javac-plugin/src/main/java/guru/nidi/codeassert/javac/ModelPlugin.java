@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.javac;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+
+import java.io.File;
+
+/**
+ * A javac plugin that builds the dependency model while compiling and saves it with
+ * {@link guru.nidi.codeassert.model.Model#save(File)}.
+ * Tests can then start from {@code Model.load(file)} instead of parsing all class files again.
+ * The dependencies are taken from the compiler's syntax trees, see {@link ModelListener} for the differences
+ * to a model parsed from class files.
+ * <p>
+ * Usage: {@code javac -Xplugin:"CodeAssertModel [model file]"}
+ * with this plugin and code-assert on the processor path.
+ * The model file defaults to {@code target/code-assert.model}.
+ * An existing model file is deleted when the compilation starts and only written again if it succeeds.
+ * The model only contains the classes of one compilation, so incremental compilation must not be used.
+ */
+public class ModelPlugin implements Plugin {
+    public static final String NAME = "CodeAssertModel";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        final File model = new File(args.length > 0 ? args[0] : "target/code-assert.model");
+        model.delete();
+        task.addTaskListener(new ModelListener(task, model));
+    }
+}
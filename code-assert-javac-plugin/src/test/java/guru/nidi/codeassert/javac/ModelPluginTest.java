@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.javac;
+
+import guru.nidi.codeassert.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ModelPluginTest {
+    private static final File BASE = new File("target/plugin-test");
+    private static final File CLASSES = new File(BASE, "classes");
+    private static final File MODEL = new File(BASE, "test.model");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.deleteIfExists(MODEL.toPath());
+    }
+
+    @Test
+    void sameAsParsed() throws IOException {
+        assertEquals(0, compile(""));
+        final Model loaded = Model.load(MODEL);
+        final Model parsed = Model.from(classFiles(CLASSES, new ArrayList<File>()));
+        assertEquals(describe(parsed), describe(loaded));
+        assertEquals(5, parsedClasses(loaded));
+    }
+
+    @Test
+    void compileErrorDeletesModel() throws IOException {
+        Files.createDirectories(BASE.toPath());
+        Files.write(MODEL.toPath(), new byte[]{1});
+        assertEquals(1, compile("class D { void broken() { undefined(); } }"));
+        assertFalse(MODEL.exists());
+    }
+
+    private static int compile(String more) throws IOException {
+        Files.createDirectories(CLASSES.toPath());
+        final List<String> args = new ArrayList<>(Arrays.asList("-d", CLASSES.getPath(),
+                "-Xplugin:" + ModelPlugin.NAME + " " + MODEL.getPath(),
+                source("a/A.java", "package a; public class A { b.B b; class Inner { java.util.List<c.C> cs; } }"),
+                source("b/B.java", "package b; public abstract class B { public void run() { new Thread().start(); } }"),
+                source("c/C.java", "package c; @Deprecated public interface C { }"),
+                source("c/package-info.java", "@Deprecated package c;")));
+        if (more.length() > 0) {
+            args.add(source("d/D.java", "package d; " + more));
+        }
+        final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        return javac.run(null, null, null, args.toArray(new String[0]));
+    }
+
+    private static String source(String name, String content) throws IOException {
+        final File file = new File(BASE, "src/" + name);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+        return file.getPath();
+    }
+
+    private static List<File> classFiles(File dir, List<File> res) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    classFiles(file, res);
+                } else if (file.getName().endsWith(".class")) {
+                    res.add(file);
+                }
+            }
+        }
+        return res;
+    }
+
+    private static int parsedClasses(Model model) {
+        int count = 0;
+        for (final CodeClass clazz : model.getClasses()) {
+            if (clazz.getSourceFile().endsWith(".java")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String describe(Model model) {
+        final Map<String, String> res = new TreeMap<>();
+        for (final CodePackage pack : model.getPackages()) {
+            res.put(pack.getName(), names(pack.uses()) + " " + names(pack.getAnnotations()));
+        }
+        for (final CodeClass clazz : model.getClasses()) {
+            res.put(clazz.getName(), clazz.getSourceFile() + " " + clazz.isConcrete()
+                    + " " + names(clazz.usedClassCounts().keySet()) + " " + names(clazz.getAnnotations()));
+        }
+        return res.toString();
+    }
+
+    private static Set<String> names(Collection<? extends UsingElement<?>> elems) {
+        final Set<String> res = new TreeSet<>();
+        for (final UsingElement<?> elem : elems) {
+            res.add(elem.getName());
+        }
+        return res;
+    }
+}
@@ -58,6 +58,30 @@ public class LocationMatcher implements Comparable<LocationMatcher> {
         return matchesPattern(loc.pack, packageName) && matchesClass && matchesPattern(loc.method, methodName);
     }
 
+    /**
+     * @param packageName a package name.
+     * @return if the package part of the pattern matches, this is necessary for any match in the package.
+     */
+    public boolean matchesPackagePattern(String packageName) {
+        return matchesPattern(loc.pack, packageName);
+    }
+
+    /**
+     * @return the literal start of the package pattern, all matched packages start with it.
+     */
+    public String packagePrefix() {
+        final String pack = loc.pack;
+        int i = 0;
+        while (i < pack.length() && pack.charAt(i) != '*' && pack.charAt(i) != '+') {
+            i++;
+        }
+        // .* also matches nothing, so the dot is optional
+        if (i < pack.length() && i > 0 && pack.charAt(i - 1) == '.') {
+            i--;
+        }
+        return pack.substring(0, i);
+    }
+
     public boolean matchesLanguage(Language language) {
         return language == null || loc.language == null || loc.language == language;
     }
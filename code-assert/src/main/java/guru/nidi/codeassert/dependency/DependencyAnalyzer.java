@@ -31,37 +31,51 @@ public class DependencyAnalyzer implements Analyzer<Dependencies> {
     private final DependencyRules rules;
     private final Scope scope;
     private final DependencyCollector collector;
+    private final int parallelism;
 
     public DependencyAnalyzer(AnalyzerConfig config) {
-        this(Model.from(config.getClasses()), DependencyRules.denyAll(), Scope.PACKAGES, new DependencyCollector());
+        this(Model.from(config.getClasses()), DependencyRules.denyAll(), Scope.PACKAGES, new DependencyCollector(), 1);
     }
 
     public DependencyAnalyzer(Model model) {
-        this(model, DependencyRules.denyAll(), Scope.PACKAGES, new DependencyCollector());
+        this(model, DependencyRules.denyAll(), Scope.PACKAGES, new DependencyCollector(), 1);
     }
 
-    private DependencyAnalyzer(Model model, DependencyRules rules, Scope scope, DependencyCollector collect) {
+    private DependencyAnalyzer(Model model, DependencyRules rules, Scope scope, DependencyCollector collect,
+                               int parallelism) {
         this.model = model;
         this.rules = rules;
         this.scope = scope;
         this.collector = collect;
+        this.parallelism = parallelism;
     }
 
     public DependencyAnalyzer rules(DependencyRules rules) {
-        return new DependencyAnalyzer(model, rules, scope, collector);
+        return new DependencyAnalyzer(model, rules, scope, collector, parallelism);
     }
 
     public DependencyAnalyzer scope(Scope scope) {
-        return new DependencyAnalyzer(model, rules, scope, collector);
+        return new DependencyAnalyzer(model, rules, scope, collector, parallelism);
     }
 
     public DependencyAnalyzer collector(DependencyCollector collector) {
-        return new DependencyAnalyzer(model, rules, scope, collector);
+        return new DependencyAnalyzer(model, rules, scope, collector, parallelism);
+    }
+
+    /**
+     * Analyze the rules with the given number of threads.
+     *
+     * @param parallelism the number of threads to use.
+     * @return a new analyzer.
+     * @see DependencyRules#analyzeRules(guru.nidi.codeassert.model.Scope, int)
+     */
+    public DependencyAnalyzer parallelism(int parallelism) {
+        return new DependencyAnalyzer(model, rules, scope, collector, parallelism);
     }
 
     @Override
     public DependencyResult analyze() {
-        final Dependencies dependencies = rules.analyzeRules(scope.in(model));
+        final Dependencies dependencies = rules.analyzeRules(scope.in(model), parallelism);
         final UsageCounter counter = new UsageCounter();
         final Dependencies filtered = new Dependencies(new DependencyMap(), new DependencyMap(), new DependencyMap(),
                 handleNotExisting(dependencies, counter),
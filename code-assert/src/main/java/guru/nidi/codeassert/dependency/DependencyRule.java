@@ -16,20 +16,29 @@
 package guru.nidi.codeassert.dependency;
 
 import guru.nidi.codeassert.config.LocationMatcher;
-import guru.nidi.codeassert.model.Scope;
-import guru.nidi.codeassert.model.UsingElement;
+import guru.nidi.codeassert.model.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import static guru.nidi.codeassert.dependency.RuleAccessor.*;
-
 public class DependencyRule extends CodeElement {
-    final Usage use = new Usage();
-    final Usage usedBy = new Usage();
+    final Usage use;
+    final Usage usedBy;
     boolean optional;
 
     DependencyRule(String pattern, boolean allowAll) {
+        this(pattern, allowAll, new Usage(), new Usage(), false);
+    }
+
+    private DependencyRule(String pattern, boolean allowAll, Usage use, Usage usedBy, boolean optional) {
         super(pattern, allowAll);
+        this.use = use;
+        this.usedBy = usedBy;
+        this.optional = optional;
+    }
+
+    DependencyRule copy() {
+        return new DependencyRule(pattern.toString(), allowAll, use.copy(), usedBy.copy(), optional);
     }
 
     public static DependencyRule allowAll(String name) {
@@ -79,20 +88,30 @@ public class DependencyRule extends CodeElement {
         return use.isEmpty() && usedBy.isEmpty();
     }
 
-    public <T extends UsingElement<T>> Analyzer analyzer(Scope<T> scope, DependencyRules rules) {
+    public <T extends UsingElement<T>> Analyzer<T> analyzer(Scope<T> scope, DependencyRules rules) {
         return new Analyzer<>(scope, rules);
     }
 
+    <T extends UsingElement<T>> Analyzer<T> analyzer(Scope<T> scope, DependencyRules rules, UsageTable usage) {
+        return new Analyzer<>(scope, rules, usage);
+    }
+
     public class Analyzer<T extends UsingElement<T>> {
         final Dependencies result = new Dependencies();
-        private final Scope<T> scope;
+        private final Graph<T> graph;
         private final DependencyRules rules;
-        private final List<T> elems;
+        private final UsageTable usage;
+        private final int[] elems;
 
         public Analyzer(Scope<T> scope, DependencyRules rules) {
-            this.scope = scope;
+            this(scope, rules, rules.usageTable(scope.graph()));
+        }
+
+        Analyzer(Scope<T> scope, DependencyRules rules, UsageTable usage) {
             this.rules = rules;
-            elems = scope.matchingElements(pattern);
+            this.usage = usage;
+            graph = scope.graph();
+            elems = graph.matching(pattern);
         }
 
         public Dependencies analyze() {
@@ -103,17 +122,21 @@ public class DependencyRule extends CodeElement {
         }
 
         private void analyzeNotExisting() {
-            if (!optional && elems.isEmpty()) {
+            if (!optional && elems.length == 0) {
                 result.notExisting.add(pattern);
             }
         }
 
         private void analyzeMissing() {
-            for (final T elem : elems) {
-                for (final LocationMatcher mustMatcher : use.must) {
-                    for (final T must : scope.matchingElements(mustMatcher)) {
-                        if (!elem.uses(must)) {
-                            result.missing.with(pattern.specificity(), elem, must);
+            final List<int[]> musts = new ArrayList<>();
+            for (final LocationMatcher mustMatcher : use.must) {
+                musts.add(graph.matching(mustMatcher));
+            }
+            for (final int elem : elems) {
+                for (final int[] mustMatches : musts) {
+                    for (final int must : mustMatches) {
+                        if (!graph.uses(elem, must)) {
+                            result.missing.with(pattern.specificity(), graph.element(elem), graph.element(must));
                         }
                     }
                 }
@@ -121,10 +144,13 @@ public class DependencyRule extends CodeElement {
         }
 
         private void analyzeAllowAndDeny() {
-            for (final T elem : elems) {
-                for (final T dep : elem.uses()) {
-                    final int allowed = calcAllowedSpecificity(elem, dep);
-                    final int denied = calcDeniedSpecificity(elem, dep);
+            for (final int id : elems) {
+                final T elem = graph.element(id);
+                for (int e = graph.edgeStart(id); e < graph.edgeEnd(id); e++) {
+                    final int depId = graph.target(e);
+                    final T dep = graph.element(depId);
+                    final int allowed = calcAllowedSpecificity(id, dep, depId);
+                    final int denied = calcDeniedSpecificity(id, dep, depId);
                     if (isAmbiguous(allowed, denied)) {
                         throw new AmbiguousRuleException(DependencyRule.this, elem, dep);
                     }
@@ -156,17 +182,17 @@ public class DependencyRule extends CodeElement {
             return allowed != 0 && allowed == denied;
         }
 
-        private int calcDeniedSpecificity(T thisPack, T dep) {
+        private int calcDeniedSpecificity(int thisPack, T dep, int depId) {
             return Math.max(
                     dep.mostSpecificMatch(use.mustNot),
-                    rules.mostSpecificUsageMatch(thisPack, dep, MUST_NOT_BE_USED));
+                    usage.mustNotBeUsed.specificity(thisPack, depId));
         }
 
-        private int calcAllowedSpecificity(T thisPack, T dep) {
+        private int calcAllowedSpecificity(int thisPack, T dep, int depId) {
             final int useAllowed = Math.max(dep.mostSpecificMatch(use.must), dep.mostSpecificMatch(use.may));
             final int usedByAllowed = Math.max(
-                    rules.mostSpecificUsageMatch(thisPack, dep, MUST_BE_USED),
-                    rules.mostSpecificUsageMatch(thisPack, dep, MAY_BE_USED));
+                    usage.mustBeUsed.specificity(thisPack, depId),
+                    usage.mayBeUsed.specificity(thisPack, depId));
             return Math.max(useAllowed, usedByAllowed);
         }
     }
@@ -21,8 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.Pattern;
 
 public final class DependencyRules {
@@ -34,29 +34,62 @@ public final class DependencyRules {
     private final boolean allowAll;
     private final boolean allowIntraPackageCycles;
     final boolean allowIntraPackageDeps;
+    private final UsageTable.Index compiled;
 
     private DependencyRules(List<DependencyRule> rules, boolean allowAll,
-                            boolean allowIntraPackageCycles, boolean allowIntraPackageDeps) {
+                            boolean allowIntraPackageCycles, boolean allowIntraPackageDeps,
+                            UsageTable.Index compiled) {
         this.rules = rules;
         this.allowAll = allowAll;
         this.allowIntraPackageCycles = allowIntraPackageCycles;
         this.allowIntraPackageDeps = allowIntraPackageDeps;
+        this.compiled = compiled;
     }
 
     public static DependencyRules allowAll() {
-        return new DependencyRules(new ArrayList<DependencyRule>(), true, true, true);
+        return new DependencyRules(new ArrayList<DependencyRule>(), true, true, true, null);
     }
 
     public static DependencyRules denyAll() {
-        return new DependencyRules(new ArrayList<DependencyRule>(), false, false, false);
+        return new DependencyRules(new ArrayList<DependencyRule>(), false, false, false, null);
     }
 
     public DependencyRules allowIntraPackageCycles(boolean allowIntraPackageCycles) {
-        return new DependencyRules(rules, allowAll, allowIntraPackageCycles, allowIntraPackageDeps);
+        return new DependencyRules(rules, allowAll, allowIntraPackageCycles, allowIntraPackageDeps, compiled);
     }
 
     public DependencyRules allowIntraPackageDependencies(boolean allowIntraPackageDeps) {
-        return new DependencyRules(rules, allowAll, allowIntraPackageCycles, allowIntraPackageDeps);
+        return new DependencyRules(rules, allowAll, allowIntraPackageCycles, allowIntraPackageDeps, compiled);
+    }
+
+    /**
+     * Create an immutable copy of these rules, e.g. to check many models or to check models in parallel.
+     * The rulers are not evaluated again and the matchers of the usedBy relations are prepared once.
+     * The copy can safely be used by multiple threads, trying to add rules to it throws an exception.
+     * Later changes to these rules or to their DependencyRule objects do not affect the copy.
+     *
+     * @return the compiled copy.
+     */
+    public DependencyRules compile() {
+        if (isCompiled()) {
+            return this;
+        }
+        final List<DependencyRule> copies = new ArrayList<>();
+        for (final DependencyRule rule : rules) {
+            copies.add(rule.copy());
+        }
+        return new DependencyRules(Collections.unmodifiableList(copies), allowAll,
+                allowIntraPackageCycles, allowIntraPackageDeps, new UsageTable.Index(copies));
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    private void checkNotCompiled() {
+        if (isCompiled()) {
+            throw new IllegalStateException("Compiled rules cannot be changed.");
+        }
     }
 
     public DependencyRule addRule(String pack) {
@@ -64,6 +97,7 @@ public final class DependencyRules {
     }
 
     public DependencyRule addRule(DependencyRule pack) {
+        checkNotCompiled();
         rules.add(pack);
         return pack;
     }
@@ -146,6 +180,7 @@ public final class DependencyRules {
     }
 
     private DependencyRules doWithRules(String basePackage, boolean external, DependencyRuler ruler) {
+        checkNotCompiled();
         CURRENT.set(this);
         try {
             final List<DependencyRule> ruleFields = initFields(basePackage, ruler);
@@ -277,27 +312,70 @@ public final class DependencyRules {
     }
 
     public <T extends UsingElement<T>> Dependencies analyzeRules(Scope<T> scope) {
-        final Dependencies result = new Dependencies();
-        for (final DependencyRule rule : rules) {
-            result.merge(rule.analyzer(scope, this).analyze());
+        return analyzeRules(scope, 1);
+    }
+
+    /**
+     * Analyze the rules on the given scope.
+     * With a parallelism of more than one, the rules are analyzed on a fork join pool
+     * while the undefined elements and the cycles are searched concurrently.
+     * The result is the same as with sequential analysis.
+     *
+     * @param scope       the scope to analyze.
+     * @param parallelism the number of threads to use.
+     * @param <T>         the type of the elements of the scope.
+     * @return the dependencies found.
+     */
+    public <T extends UsingElement<T>> Dependencies analyzeRules(Scope<T> scope, int parallelism) {
+        final Graph<T> graph = scope.graph();
+        final RulesTask<T> task = new RulesTask<>(rules, this, scope, usageTable(graph));
+        if (parallelism <= 1) {
+            return complete(task.analyzeAll(), findUndefined(graph), findCycles(graph));
         }
-        for (final T elem : scope) {
-            if (!elem.matchesAny(rules)) {
-                result.undefined.add(elem.getName());
-            }
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final ForkJoinTask<Set<DependencyMap>> cycles = pool.submit(new Callable<Set<DependencyMap>>() {
+                @Override
+                public Set<DependencyMap> call() {
+                    return findCycles(graph);
+                }
+            });
+            final ForkJoinTask<Set<String>> undefined = pool.submit(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() {
+                    return findUndefined(graph);
+                }
+            });
+            final Dependencies result = pool.invoke(task);
+            return complete(result, undefined.join(), cycles.join());
+        } finally {
+            pool.shutdown();
         }
+    }
+
+    private Dependencies complete(Dependencies result, Set<String> undefined, Set<DependencyMap> cycles) {
+        result.undefined.addAll(undefined);
         result.normalize();
-        result.cycles.addAll(new Tarjan<T>().analyzeCycles(scope, allowIntraPackageCycles));
+        result.cycles.addAll(cycles);
         return result;
     }
 
-    <T extends UsingElement<T>> int mostSpecificUsageMatch(T from, T to, RuleAccessor accessor) {
-        int s = 0;
-        for (final DependencyRule rule : rules) {
-            if (rule.matches(to)) {
-                s = Math.max(s, from.mostSpecificMatch(accessor.access(rule)));
+    private <T extends UsingElement<T>> Set<String> findUndefined(Graph<T> graph) {
+        final Set<String> undefined = new HashSet<>();
+        for (int i = 0; i < graph.size(); i++) {
+            final T elem = graph.element(i);
+            if (!elem.matchesAny(rules)) {
+                undefined.add(elem.getName());
             }
         }
-        return s;
+        return undefined;
+    }
+
+    private <T extends UsingElement<T>> Set<DependencyMap> findCycles(Graph<T> graph) {
+        return new Tarjan<T>().analyzeCycles(graph, allowIntraPackageCycles);
+    }
+
+    UsageTable usageTable(Graph<?> graph) {
+        return new UsageTable(graph, isCompiled() ? compiled : new UsageTable.Index(rules));
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.dependency;
+
+import guru.nidi.codeassert.model.Scope;
+import guru.nidi.codeassert.model.UsingElement;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Analyzes a range of rules into a partial result.
+ * Large ranges are split and the parts are merged in rule order,
+ * so the result is the same as when analyzing all rules sequentially.
+ */
+@SuppressWarnings("serial")
+class RulesTask<T extends UsingElement<T>> extends RecursiveTask<Dependencies> {
+    private static final int THRESHOLD = 8;
+
+    private final List<DependencyRule> rules;
+    private final DependencyRules owner;
+    private final Scope<T> scope;
+    private final UsageTable usage;
+    private final int from;
+    private final int to;
+
+    RulesTask(List<DependencyRule> rules, DependencyRules owner, Scope<T> scope, UsageTable usage) {
+        this(rules, owner, scope, usage, 0, rules.size());
+    }
+
+    private RulesTask(List<DependencyRule> rules, DependencyRules owner, Scope<T> scope, UsageTable usage,
+                      int from, int to) {
+        this.rules = rules;
+        this.owner = owner;
+        this.scope = scope;
+        this.usage = usage;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Dependencies compute() {
+        if (to - from <= THRESHOLD) {
+            return analyzeAll();
+        }
+        final int mid = (from + to) >>> 1;
+        final RulesTask<T> left = new RulesTask<>(rules, owner, scope, usage, from, mid);
+        left.fork();
+        final Dependencies right = new RulesTask<>(rules, owner, scope, usage, mid, to).compute();
+        final Dependencies res = left.join();
+        res.merge(right);
+        return res;
+    }
+
+    /**
+     * Analyze the whole range sequentially.
+     *
+     * @return the result of all rules in the range.
+     */
+    Dependencies analyzeAll() {
+        final Dependencies res = new Dependencies();
+        for (int i = from; i < to; i++) {
+            res.merge(rules.get(i).analyzer(scope, owner, usage).analyze());
+        }
+        return res;
+    }
+}
@@ -15,126 +15,143 @@
  */
 package guru.nidi.codeassert.dependency;
 
+import guru.nidi.codeassert.model.Graph;
 import guru.nidi.codeassert.model.UsingElement;
 
 import java.util.*;
 
 class Tarjan<T extends UsingElement<T>> {
     private int index;
-    private final Stack<T> stack = new Stack<>();
-    private final Map<String, Node> nodes = new HashMap<>();
+    private Graph<T> graph;
+    private int[] indices;
+    private int[] lowlinks;
+    private boolean[] onStack;
+    private int[] stack;
+    private int stackSize;
+    private int[] calls;
+    private int[] nextEdges;
+    private boolean allowIntraPackageCycles;
     private final Set<DependencyMap> result = new HashSet<>();
 
-    private static class Node {
-        int index = -1;
-        int lowlink;
-        boolean onStack;
-    }
-
-    public Set<DependencyMap> analyzeCycles(Iterable<T> elems, boolean allowIntraPackageCycles) {
+    public Set<DependencyMap> analyzeCycles(Graph<T> graph, boolean allowIntraPackageCycles) {
+        this.graph = graph;
+        this.allowIntraPackageCycles = allowIntraPackageCycles;
         index = 0;
-        final Map<String, T> map = new HashMap<>();
-        for (final T elem : elems) {
-            map.put(elem.getName(), elem);
-            if (node(elem).index < 0) {
-                strongConnect(elem);
+        final int size = graph.size();
+        indices = new int[size];
+        Arrays.fill(indices, -1);
+        lowlinks = new int[size];
+        onStack = new boolean[size];
+        stack = new int[size];
+        stackSize = 0;
+        calls = new int[size];
+        nextEdges = new int[size];
+        for (int v = 0; v < size; v++) {
+            if (indices[v] < 0) {
+                strongConnect(v);
             }
         }
-        return removeInnerCycles(map, true, allowIntraPackageCycles);
+        return result;
     }
 
-    private Set<DependencyMap> removeInnerCycles(Map<String, T> elems, boolean innerClasses, boolean intraPackages) {
-        final Set<DependencyMap> res = new HashSet<>();
-        for (final DependencyMap map : result) {
-            final DependencyMap filtered = new DependencyMap();
-            for (final String from : map.getElements()) {
-                for (final Map.Entry<String, DependencyMap.Info> entry : map.getDependencies(from).entrySet()) {
-                    final String to = entry.getKey();
-                    final boolean innerClassOk = innerClasses && areInnerClasses(from, to);
-                    final boolean intraPackageOk = intraPackages && areSamePackage(elems, from, to);
-                    if (!innerClassOk && !intraPackageOk) {
-                        filtered.with(entry.getValue().getSpecificity(), from, entry.getValue().getVias(), to);
-                    }
-                }
-            }
-            if (!filtered.isEmpty()) {
-                res.add(filtered);
-            }
-        }
-        return res;
-    }
-
-    private boolean areSamePackage(Map<String, T> elems, String c1, String c2) {
-        return elems.get(c1).getPackageName().equals(elems.get(c2).getPackageName());
+    /**
+     * Dependencies between inner classes and their outer class and, if allowed, inside a package
+     * are not reported as part of a cycle.
+     */
+    private boolean isInnerDependency(T from, T to) {
+        return isInnerClass(from.getName(), to.getName()) || isInnerClass(to.getName(), from.getName())
+                || (allowIntraPackageCycles && from.getPackageName().equals(to.getPackageName()));
     }
 
-    private boolean areInnerClasses(String c1, String c2) {
-        return c1.startsWith(c2 + "$") || c2.startsWith(c1 + "$");
+    private boolean isInnerClass(String inner, String outer) {
+        return inner.length() > outer.length() && inner.charAt(outer.length()) == '$' && inner.startsWith(outer);
     }
 
-    private Node node(T elem) {
-        Node node = nodes.get(elem.getName());
-        if (node == null) {
-            node = new Node();
-            nodes.put(elem.getName(), node);
-        }
-        return node;
-    }
-
-    private void strongConnect(T elem) {
-        final Node v = init(elem);
-        processUses(elem, v);
-
-        if (v.lowlink == v.index) {
-            final Set<T> group = createGroup(elem);
-            if (group.size() > 1) {
-                addCycle(group);
+    /**
+     * The recursion of the original algorithm is replaced by the explicit call stack {@code calls},
+     * {@code nextEdges} holds the edge where each call continues after the call of a successor has returned.
+     * So deep graphs do not overflow the thread's stack.
+     */
+    private void strongConnect(int root) {
+        int depth = 0;
+        init(root);
+        calls[depth++] = root;
+        while (depth > 0) {
+            final int v = calls[depth - 1];
+            final int e = nextEdges[v];
+            if (e < graph.edgeEnd(v)) {
+                nextEdges[v] = e + 1;
+                final int w = graph.target(e);
+                if (indices[w] < 0) {
+                    init(w);
+                    calls[depth++] = w;
+                } else if (onStack[w]) {
+                    lowlinks[v] = Math.min(lowlinks[v], indices[w]);
+                }
+            } else {
+                depth--;
+                if (lowlinks[v] == indices[v]) {
+                    removeGroup(v);
+                }
+                if (depth > 0) {
+                    final int caller = calls[depth - 1];
+                    lowlinks[caller] = Math.min(lowlinks[caller], lowlinks[v]);
+                }
             }
         }
     }
 
-    private Node init(T elem) {
-        final Node v = node(elem);
-        v.index = index;
-        v.lowlink = index;
+    private void init(int v) {
+        indices[v] = index;
+        lowlinks[v] = index;
         index++;
-        stack.push(elem);
-        v.onStack = true;
-        return v;
+        nextEdges[v] = graph.edgeStart(v);
+        stack[stackSize++] = v;
+        onStack[v] = true;
     }
 
-    private void processUses(T elem, Node v) {
-        for (final T dep : elem.uses()) {
-            final Node w = node(dep);
-            if (w.index < 0) {
-                strongConnect(dep);
-                v.lowlink = Math.min(v.lowlink, w.lowlink);
-            } else if (w.onStack) {
-                v.lowlink = Math.min(v.lowlink, w.index);
-            }
+    private void removeGroup(int v) {
+        final int start = groupStart(v);
+        if (stackSize - start > 1) {
+            addCycle(v, start);
+        }
+        for (int i = start; i < stackSize; i++) {
+            onStack[stack[i]] = false;
         }
+        stackSize = start;
     }
 
-    private Set<T> createGroup(T elem) {
-        final Set<T> group = new HashSet<>();
-        T w;
-        do {
-            w = stack.pop();
-            node(w).onStack = false;
-            group.add(w);
-        } while (!elem.equals(w));
-        return group;
+    /**
+     * @return the position in the stack where the group of v starts.
+     */
+    private int groupStart(int v) {
+        int pos = stackSize - 1;
+        while (stack[pos] != v) {
+            pos--;
+        }
+        return pos;
     }
 
-    private void addCycle(Set<T> group) {
+    /**
+     * The group consists of the elements on the stack above its root v.
+     */
+    private void addCycle(int v, int start) {
         final DependencyMap g = new DependencyMap();
-        for (final T elem : group) {
-            for (final T dep : elem.uses()) {
-                if (group.contains(dep)) {
-                    g.with(0, elem, dep);
+        for (int i = start; i < stackSize; i++) {
+            final int from = stack[i];
+            final T fromElem = graph.element(from);
+            for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+                final int to = graph.target(e);
+                if (onStack[to] && indices[to] >= indices[v]) {
+                    final T toElem = graph.element(to);
+                    if (!isInnerDependency(fromElem, toElem)) {
+                        g.with(0, fromElem, toElem);
+                    }
                 }
             }
         }
-        result.add(g);
+        if (!g.isEmpty()) {
+            result.add(g);
+        }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.dependency;
+
+import guru.nidi.codeassert.config.LocationMatcher;
+import guru.nidi.codeassert.model.Graph;
+
+import java.util.*;
+
+import static guru.nidi.codeassert.dependency.RuleAccessor.*;
+
+/**
+ * The most specific usedBy match of a set of rules, precomputed for all elements of a graph.
+ * The specificity for two elements is the maximum of the most specific usedBy match of {@code from}
+ * over all rules matching {@code to}, but it is looked up by the element ids of the graph.
+ */
+final class UsageTable {
+    final Table mustBeUsed;
+    final Table mayBeUsed;
+    final Table mustNotBeUsed;
+
+    UsageTable(Graph<?> graph, Index index) {
+        mustBeUsed = new Table(graph, index.mustBeUsed);
+        mayBeUsed = new Table(graph, index.mayBeUsed);
+        mustNotBeUsed = new Table(graph, index.mustNotBeUsed);
+    }
+
+    /**
+     * The part of the table that does not depend on the graph.
+     */
+    static final class Index {
+        final Groups mustBeUsed;
+        final Groups mayBeUsed;
+        final Groups mustNotBeUsed;
+
+        Index(List<DependencyRule> rules) {
+            mustBeUsed = new Groups(rules, MUST_BE_USED);
+            mayBeUsed = new Groups(rules, MAY_BE_USED);
+            mustNotBeUsed = new Groups(rules, MUST_NOT_BE_USED);
+        }
+    }
+
+    /**
+     * Rules with equal usedBy matchers form a group.
+     */
+    static final class Groups {
+        private final LocationMatcher[] patterns;
+        private final int[] ruleGroups;
+        private final LocationMatcher[][] matchers;
+        private final byte[][] specificities;
+
+        Groups(List<DependencyRule> rules, RuleAccessor accessor) {
+            final Map<Set<LocationMatcher>, Integer> indices = new HashMap<>();
+            patterns = new LocationMatcher[rules.size()];
+            ruleGroups = new int[rules.size()];
+            for (int r = 0; r < rules.size(); r++) {
+                final DependencyRule rule = rules.get(r);
+                final Set<LocationMatcher> ms = accessor.access(rule);
+                patterns[r] = rule.pattern;
+                ruleGroups[r] = -1;
+                if (!ms.isEmpty()) {
+                    Integer index = indices.get(ms);
+                    if (index == null) {
+                        index = indices.size();
+                        indices.put(new HashSet<>(ms), index);
+                    }
+                    ruleGroups[r] = index;
+                }
+            }
+            matchers = new LocationMatcher[indices.size()][];
+            specificities = new byte[indices.size()][];
+            for (final Map.Entry<Set<LocationMatcher>, Integer> entry : indices.entrySet()) {
+                final LocationMatcher[] ms = entry.getKey().toArray(new LocationMatcher[0]);
+                final byte[] ss = new byte[ms.length];
+                for (int i = 0; i < ms.length; i++) {
+                    ss[i] = (byte) ms[i].specificity();
+                }
+                matchers[entry.getValue()] = ms;
+                specificities[entry.getValue()] = ss;
+            }
+        }
+    }
+
+    /**
+     * Each group has an array with the specificity for each using element.
+     * Every used element knows the groups of the rules matching it.
+     */
+    static final class Table {
+        private static final int[] NONE = new int[0];
+
+        private final byte[][] specificities;
+        private final int[][] byTarget;
+
+        Table(Graph<?> graph, Groups groups) {
+            specificities = new byte[groups.matchers.length][];
+            for (int g = 0; g < specificities.length; g++) {
+                specificities[g] = specificities(graph, groups.matchers[g], groups.specificities[g]);
+            }
+            final int[][] targets = new int[graph.size()][];
+            final int[] counts = new int[graph.size()];
+            for (int r = 0; r < groups.patterns.length; r++) {
+                if (groups.ruleGroups[r] >= 0) {
+                    for (final int to : graph.matching(groups.patterns[r])) {
+                        addTarget(targets, counts, to, groups.ruleGroups[r]);
+                    }
+                }
+            }
+            byTarget = new int[targets.length][];
+            for (int i = 0; i < targets.length; i++) {
+                byTarget[i] = counts[i] == 0 ? NONE : Arrays.copyOf(targets[i], counts[i]);
+            }
+        }
+
+        private static byte[] specificities(Graph<?> graph, LocationMatcher[] matchers, byte[] specs) {
+            final byte[] res = new byte[graph.size()];
+            for (int i = 0; i < matchers.length; i++) {
+                for (final int from : graph.matching(matchers[i])) {
+                    if (specs[i] > res[from]) {
+                        res[from] = specs[i];
+                    }
+                }
+            }
+            return res;
+        }
+
+        private static void addTarget(int[][] targets, int[] counts, int to, int index) {
+            final int[] ts = targets[to];
+            final int count = counts[to];
+            if (ts == null) {
+                targets[to] = new int[]{index, 0};
+            } else {
+                for (int i = 0; i < count; i++) {
+                    if (ts[i] == index) {
+                        return;
+                    }
+                }
+                if (count == ts.length) {
+                    targets[to] = Arrays.copyOf(ts, count * 2);
+                }
+                targets[to][count] = index;
+            }
+            counts[to] = count + 1;
+        }
+
+        int specificity(int from, int to) {
+            int s = 0;
+            for (final int index : byTarget[to]) {
+                if (specificities[index][from] > s) {
+                    s = specificities[index][from];
+                }
+            }
+            return s;
+        }
+    }
+}
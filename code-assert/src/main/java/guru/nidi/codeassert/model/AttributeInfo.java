@@ -15,51 +15,74 @@
  */
 package guru.nidi.codeassert.model;
 
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * Only the attributes that are interpreted keep their value,
+ * of all others (e.g. Code, LineNumberTable, StackMapTable) just the length is recorded.
+ */
 final class AttributeInfo {
+    private static final String VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+    private static final String SIGNATURE = "Signature";
+    private static final String SOURCE_FILE = "SourceFile";
+    private static final String CODE = "Code";
+
     final String name;
+    final int length;
     final byte[] value;
 
-    private AttributeInfo(String name, byte[] value) {
+    private AttributeInfo(String name, int length, byte[] value) {
         this.name = name;
+        this.length = length;
         this.value = value;
     }
 
-    public static AttributeInfo fromData(DataInputStream in, ConstantPool constantPool) throws IOException {
-        final int nameIndex = in.readUnsignedShort();
-        final String name = nameIndex == -1 ? null : constantPool.getUtf8(nameIndex);
+    public static AttributeInfo fromData(ByteBuffer in, ConstantPool constantPool) throws IOException {
+        final int nameIndex = ClassFileParser.u2(in);
+        final String name = nameIndex == -1 ? null : constantPool.getSymbol(nameIndex);
 
-        final int attributeLength = in.readInt();
-        final byte[] value = new byte[attributeLength];
-        for (int b = 0; b < attributeLength; b++) {
-            value[b] = in.readByte();
+        final int attributeLength = in.getInt();
+        final byte[] value;
+        if (isInterpreted(name)) {
+            value = new byte[attributeLength];
+            in.get(value);
+        } else {
+            value = null;
+            ClassFileParser.skip(in, attributeLength);
         }
+        return new AttributeInfo(name, attributeLength, value);
+    }
+
+    private static boolean isInterpreted(String name) {
+        return isAnnotation(name) || SIGNATURE.equals(name) || SOURCE_FILE.equals(name);
+    }
 
-        return new AttributeInfo(name, value);
+    private static boolean isAnnotation(String name) {
+        return VISIBLE_ANNOTATIONS.equals(name) || INVISIBLE_ANNOTATIONS.equals(name);
     }
 
     public boolean isAnnotation() {
-        return "RuntimeVisibleAnnotations".equals(name) || "RuntimeInvisibleAnnotations".equals(name);
+        return isAnnotation(name);
     }
 
     public boolean isSignature() {
-        return "Signature".equals(name);
+        return SIGNATURE.equals(name);
     }
 
     public boolean isSource() {
-        return "SourceFile".equals(name);
+        return SOURCE_FILE.equals(name);
     }
 
     public boolean isCode() {
-        return "Code".equals(name);
+        return CODE.equals(name);
     }
 
     public String sourceFile(ConstantPool constantPool) throws IOException {
         final int b0 = value[0] < 0 ? value[0] + 256 : value[0];
         final int b1 = value[1] < 0 ? value[1] + 256 : value[1];
         final int pe = b0 * 256 + b1;
-        return constantPool.getUtf8(pe);
+        return constantPool.getSymbol(pe);
     }
 }
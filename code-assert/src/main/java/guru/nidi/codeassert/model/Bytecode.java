@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Walks the instructions of a Code attribute (JVM Spec 4.7.3, 6.5)
+ * to find the fields and methods a method uses.
+ */
+final class Bytecode {
+    private static final int
+            TABLESWITCH = 0xAA,
+            LOOKUPSWITCH = 0xAB,
+            GETSTATIC = 0xB2,
+            INVOKEINTERFACE = 0xB9,
+            WIDE = 0xC4,
+            IINC = 0x84;
+
+    private static final MemberRef[] NONE = new MemberRef[0];
+
+    /**
+     * The length of each instruction including its opcode, 0 if it has a variable length.
+     */
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        fill(0x00, 0xFF, 1);
+        fill(0x10, 0x10, 2); //bipush
+        fill(0x11, 0x11, 3); //sipush
+        fill(0x12, 0x12, 2); //ldc
+        fill(0x13, 0x14, 3); //ldc_w, ldc2_w
+        fill(0x15, 0x19, 2); //iload..aload
+        fill(0x36, 0x3A, 2); //istore..astore
+        fill(IINC, IINC, 3);
+        fill(0x99, 0xA8, 3); //if*, goto, jsr
+        fill(0xA9, 0xA9, 2); //ret
+        fill(TABLESWITCH, LOOKUPSWITCH, 0);
+        fill(0xB2, 0xB8, 3); //get*, put*, invokevirtual, invokespecial, invokestatic
+        fill(0xB9, 0xBA, 5); //invokeinterface, invokedynamic
+        fill(0xBB, 0xBB, 3); //new
+        fill(0xBC, 0xBC, 2); //newarray
+        fill(0xBD, 0xBD, 3); //anewarray
+        fill(0xC0, 0xC1, 3); //checkcast, instanceof
+        fill(WIDE, WIDE, 0);
+        fill(0xC5, 0xC5, 4); //multianewarray
+        fill(0xC6, 0xC7, 3); //ifnull, ifnonnull
+        fill(0xC8, 0xC9, 5); //goto_w, jsr_w
+    }
+
+    private Bytecode() {
+    }
+
+    private static void fill(int from, int to, int length) {
+        for (int i = from; i <= to; i++) {
+            LENGTHS[i] = (byte) length;
+        }
+    }
+
+    /**
+     * @param in     the class file.
+     * @param offset the position of the content of a Code attribute.
+     * @return the distinct fields and methods accessed by get*, put* and invoke* instructions, in order of appearance.
+     * @throws IOException if the code is invalid.
+     */
+    static MemberRef[] usedMembers(ByteBuffer in, int offset, ConstantPool constantPool) throws IOException {
+        final int start = offset + 8;
+        final int end = start + in.getInt(offset + 4);
+        final Set<MemberRef> refs = new LinkedHashSet<>();
+        int pc = start;
+        while (pc < end) {
+            final int opcode = in.get(pc) & 0xFF;
+            if (opcode >= GETSTATIC && opcode <= INVOKEINTERFACE) {
+                refs.add(constantPool.getMemberRef(in.getShort(pc + 1) & 0xFFFF));
+            }
+            final int length = LENGTHS[opcode] > 0 ? LENGTHS[opcode] : variableLength(in, start, pc, opcode);
+            if (length <= 0) {
+                throw new IOException("Invalid instruction at " + (pc - start));
+            }
+            pc += length;
+        }
+        if (pc != end) {
+            throw new IOException("Instruction exceeds the code");
+        }
+        return refs.isEmpty() ? NONE : refs.toArray(new MemberRef[refs.size()]);
+    }
+
+    private static int variableLength(ByteBuffer in, int start, int pc, int opcode) {
+        if (opcode == WIDE) {
+            return (in.get(pc + 1) & 0xFF) == IINC ? 6 : 4;
+        }
+        // the operands of switches are aligned to a multiple of 4 from the start of the code
+        final int operands = pc + 4 - ((pc - start) & 3);
+        if (opcode == TABLESWITCH) {
+            final int low = in.getInt(operands + 4);
+            final int high = in.getInt(operands + 8);
+            return operands - pc + 12 + (high - low + 1) * 4;
+        }
+        final int pairs = in.getInt(operands + 4);
+        return operands - pc + 8 + pairs * 8;
+    }
+}
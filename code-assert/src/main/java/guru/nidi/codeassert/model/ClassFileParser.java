@@ -15,11 +15,17 @@
  */
 package guru.nidi.codeassert.model;
 
-import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * The <code>ClassFileParser</code> class is responsible for
@@ -33,31 +39,119 @@ class ClassFileParser {
     private static final int JAVA_MAGIC = 0xCAFEBABE;
 
     private ConstantPool constantPool;
-    private DataInputStream in;
+    private ByteBuffer in;
 
+    /**
+     * @return the parsed class or null if the model does not include it.
+     */
     CodeClass parse(File file, Model model) throws IOException {
-        try (InputStream in = new FileInputStream(file)) {
-            return parse(in, model);
+        final CodeClass clazz = parse(read(file), model);
+        if (clazz != null) {
+            clazz.classFile = file.getAbsoluteFile();
         }
+        return clazz;
     }
 
     CodeClass parse(InputStream is, Model model) throws IOException {
-        final CountingInputStream counter = new CountingInputStream(is);
-        in = new DataInputStream(counter);
+        return parse(ByteBuffer.wrap(IOUtils.toByteArray(is)), model);
+    }
+
+    CodeClass parse(ZipFile zip, ZipEntry entry, Model model) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            return parse(ByteBuffer.wrap(read(in, entry.getSize())), model);
+        }
+    }
 
+    CodeClass parse(ByteBuffer data, Model model) throws IOException {
+        in = data.slice();
+        try {
+            return doParse(model);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid class file", e);
+        }
+    }
+
+    /**
+     * Parse only the name, super class and interfaces of a class, members and attributes are not read.
+     *
+     * @param location where the class file comes from.
+     */
+    ClassHeader parseHeader(ByteBuffer data, String location, Symbols symbols) throws IOException {
+        in = data.slice();
+        try {
+            parseMagic();
+            final int minor = parseMinorVersion();
+            final int major = parseMajorVersion();
+            constantPool = ConstantPool.fromData(in, symbols);
+            final int flags = parseAccessFlags();
+            final String className = symbols.intern(parseClassName());
+            final String superClassName = parseSuperClassName();
+            final List<String> interfaceNames = parseInterfaces();
+            for (int i = 0; i < interfaceNames.size(); i++) {
+                interfaceNames.set(i, symbols.intern(interfaceNames.get(i)));
+            }
+            return new ClassHeader(location, major, minor, flags, className,
+                    superClassName.isEmpty() ? null : symbols.intern(superClassName), interfaceNames);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid class file", e);
+        }
+    }
+
+    /**
+     * Class files are read at once into a heap buffer.
+     * They are not memory mapped, as a mapping is only released on garbage collection
+     * and locks the file until then on Windows. For files this small, mapping would not pay off anyway.
+     */
+    static ByteBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer data = ByteBuffer.allocate((int) size);
+            int read;
+            do {
+                read = channel.read(data);
+            } while (read >= 0 && data.hasRemaining());
+            data.flip();
+            return data;
+        }
+    }
+
+    /**
+     * Archive entries usually know their size, so the data can be read without copying it around.
+     */
+    static byte[] read(InputStream in, long size) throws IOException {
+        return size >= 0 ? IOUtils.toByteArray(in, size) : IOUtils.toByteArray(in);
+    }
+
+    static int u2(ByteBuffer in) {
+        return in.getShort() & 0xFFFF;
+    }
+
+    static void skip(ByteBuffer in, int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + length);
+    }
+
+    private CodeClass doParse(Model model) throws IOException {
         parseMagic();
         parseMinorVersion();
         parseMajorVersion();
 
-        constantPool = ConstantPool.fromData(in);
+        constantPool = ConstantPool.fromData(in, model.symbols);
 
         final int flags = parseAccessFlags();
 
         final String className = parseClassName();
+        if (!model.isIncluded(className)) {
+            return null;
+        }
         final String superClassName = parseSuperClassName();
         final List<String> interfaceNames = parseInterfaces();
-        final List<MemberInfo> fields = parseMembers();
-        final List<MemberInfo> methods = parseMembers();
+        final List<AttributeInfo> fieldAttributes = new ArrayList<>();
+        final List<MemberInfo> fields = parseMembers(fieldAttributes, false);
+        final List<AttributeInfo> methodAttributes = new ArrayList<>();
+        final List<MemberInfo> methods = parseMembers(methodAttributes, model.memberDependencies);
         final List<AttributeInfo> attributes = parseAttributes();
 
         return new CodeClassBuilder(className, model, constantPool)
@@ -65,65 +159,65 @@ class ClassFileParser {
                 .addFlags(flags)
                 .addSuperClass(superClassName)
                 .addInterfaces(interfaceNames)
-                .addFieldRefs(fields)
-                .addMethodRefs(methods)
+                .addFieldRefs(fields, fieldAttributes)
+                .addMethodRefs(methods, methodAttributes)
                 .addAttributeRefs(attributes)
                 .addPackageInfo(model, className)
-                .addCodeSizes(counter.getCount(), methods)
+                .addCodeSizes(in.position(), methods)
                 .clazz;
     }
 
     private int parseMagic() throws IOException {
-        final int magic = in.readInt();
+        final int magic = in.getInt();
         if (magic != JAVA_MAGIC) {
             throw new IOException("Invalid class file");
         }
         return magic;
     }
 
-    private int parseMinorVersion() throws IOException {
-        return in.readUnsignedShort();
+    private int parseMinorVersion() {
+        return u2(in);
     }
 
-    private int parseMajorVersion() throws IOException {
-        return in.readUnsignedShort();
+    private int parseMajorVersion() {
+        return u2(in);
     }
 
-    private int parseAccessFlags() throws IOException {
-        return in.readUnsignedShort();
+    private int parseAccessFlags() {
+        return u2(in);
     }
 
     private String parseClassName() throws IOException {
-        final int entryIndex = in.readUnsignedShort();
+        final int entryIndex = u2(in);
         return constantPool.getClassConstantName(entryIndex);
     }
 
     private String parseSuperClassName() throws IOException {
-        final int entryIndex = in.readUnsignedShort();
+        final int entryIndex = u2(in);
         return constantPool.getClassConstantName(entryIndex);
     }
 
     private List<String> parseInterfaces() throws IOException {
-        final int count = in.readUnsignedShort();
+        final int count = u2(in);
         final List<String> names = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
-            final int entryIndex = in.readUnsignedShort();
+            final int entryIndex = u2(in);
             names.add(constantPool.getClassConstantName(entryIndex));
         }
         return names;
     }
 
-    private List<MemberInfo> parseMembers() throws IOException {
-        final int count = in.readUnsignedShort();
+    private List<MemberInfo> parseMembers(List<AttributeInfo> attributes, boolean usedMembers) throws IOException {
+        final int count = u2(in);
         final List<MemberInfo> infos = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
-            infos.add(MemberInfo.fromData(in, constantPool));
+            infos.add(MemberInfo.fromData(in, constantPool, attributes, usedMembers));
         }
         return infos;
     }
 
     private List<AttributeInfo> parseAttributes() throws IOException {
-        final int count = in.readUnsignedShort();
+        final int count = u2(in);
         final List<AttributeInfo> attributes = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             attributes.add(AttributeInfo.fromData(in, constantPool));
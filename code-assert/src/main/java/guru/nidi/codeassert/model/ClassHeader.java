@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The name, super class, interfaces and version of a class file.
+ * Reading only this is much faster than creating a {@link Model},
+ * e.g. to find duplicate classes or to list the packages of a large class path.
+ */
+public final class ClassHeader {
+    private static final Logger LOG = LoggerFactory.getLogger(ClassHeader.class);
+
+    private final String location;
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int accessFlags;
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces;
+
+    ClassHeader(String location, int majorVersion, int minorVersion, int accessFlags,
+                String name, String superName, List<String> interfaces) {
+        this.location = location;
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.accessFlags = accessFlags;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = Collections.unmodifiableList(interfaces);
+    }
+
+    /**
+     * Read the headers of all classes in the given class files and archives (including nested archives).
+     *
+     * @param files       the class files and archives.
+     * @param parallelism the number of threads to use.
+     * @return the headers in the order of the files and the entries of the archives.
+     */
+    public static List<ClassHeader> scan(List<File> files, int parallelism) {
+        final long start = System.nanoTime();
+        final HeaderTask task = new HeaderTask(files, new Symbols());
+        final List<ClassHeader> headers;
+        if (parallelism <= 1) {
+            headers = task.scanAll();
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                headers = pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        LOG.info("Scanned {} classes in {} ms, {} classes/s", headers.size(), millis, headers.size() * 1000L / millis);
+        return headers;
+    }
+
+    /**
+     * @return the class file or the archive and entry, e.g. "lib/a.jar!/org/A.class".
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isInterface() {
+        return Modifier.isInterface(accessFlags);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPackageName() {
+        return Model.packageOf(name);
+    }
+
+    /**
+     * @return the name of the super class or null for java.lang.Object and module-info.
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    @Override
+    public String toString() {
+        return name + " extends " + superName + " implements " + interfaces
+                + " (" + majorVersion + "." + minorVersion + ", " + location + ")";
+    }
+}
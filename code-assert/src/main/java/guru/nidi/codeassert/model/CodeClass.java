@@ -16,8 +16,10 @@
 package guru.nidi.codeassert.model;
 
 import guru.nidi.codeassert.config.LocationMatcher;
+import guru.nidi.codeassert.util.ArraySet;
 import guru.nidi.codeassert.util.CountSet;
 
+import java.io.File;
 import java.util.*;
 
 import static java.util.Collections.emptyList;
@@ -25,22 +27,28 @@ import static java.util.Collections.emptyList;
 /**
  * The <code>JavaClass</code> class represents a Java
  * class or interface.
+ * Most classes of a model are only referenced and never parsed,
+ * so the collections of a class are only created when something is added to them.
  *
  * @author <b>Mike Clark</b>
  * @author Clarkware Consulting, Inc.
  */
 public class CodeClass extends UsingElement<CodeClass> {
+    private static final String UNKNOWN_SOURCE = "Unknown";
+
     private final String name;
     private final CodePackage pack;
-    private final CountSet<CodePackage> usedPackages;
-    private final CountSet<CodeClass> usedClasses;
-    private final Set<CodeClass> annotations;
-    final List<MemberInfo> fields = new ArrayList<>();
-    final List<MemberInfo> methods = new ArrayList<>();
+    private CountSet<CodePackage> usedPackages;
+    private CountSet<CodeClass> usedClasses;
+    private Set<CodeClass> annotations;
+    private List<MemberInfo> fields;
+    private List<MemberInfo> methods;
     String sourceFile;
+    File classFile;
     int codeSize;
     int totalSize;
     boolean concrete;
+    boolean parsed;
     int codeLines;
     int commentLines;
     int emptyLines;
@@ -49,10 +57,7 @@ public class CodeClass extends UsingElement<CodeClass> {
     CodeClass(String name, CodePackage pack) {
         this.name = name;
         this.pack = pack;
-        usedPackages = new CountSet<>();
-        usedClasses = new CountSet<>();
-        annotations = new HashSet<>();
-        sourceFile = "Unknown";
+        sourceFile = UNKNOWN_SOURCE;
     }
 
     public String getName() {
@@ -68,15 +73,15 @@ public class CodeClass extends UsingElement<CodeClass> {
     }
 
     public Set<CodeClass> getAnnotations() {
-        return annotations;
+        return annotations == null ? Collections.<CodeClass>emptySet() : annotations;
     }
 
     public List<MemberInfo> getFields() {
-        return fields;
+        return fields == null ? Collections.<MemberInfo>emptyList() : fields;
     }
 
     public List<MemberInfo> getMethods() {
-        return methods;
+        return methods == null ? Collections.<MemberInfo>emptyList() : methods;
     }
 
     public int getCodeSize() {
@@ -119,23 +124,23 @@ public class CodeClass extends UsingElement<CodeClass> {
     }
 
     public Collection<CodePackage> usedPackages() {
-        return usedPackages.asSet();
+        return usedPackages == null ? Collections.<CodePackage>emptySet() : usedPackages.asSet();
     }
 
     public Map<CodePackage, Integer> usedPackageCounts() {
-        return usedPackages.asMap();
+        return usedPackages == null ? Collections.<CodePackage, Integer>emptyMap() : usedPackages.asMap();
     }
 
     public Collection<CodeClass> usedClasses() {
-        return usedClasses.asSet();
+        return usedClasses == null ? Collections.<CodeClass>emptySet() : usedClasses.asSet();
     }
 
     public Map<CodeClass, Integer> usedClassCounts() {
-        return usedClasses.asMap();
+        return usedClasses == null ? Collections.<CodeClass, Integer>emptyMap() : usedClasses.asMap();
     }
 
     public boolean uses(CodePackage pack) {
-        return usedPackages.contains(pack);
+        return usedPackages != null && usedPackages.contains(pack);
     }
 
     @Override
@@ -160,17 +165,141 @@ public class CodeClass extends UsingElement<CodeClass> {
 
     void addImport(String type, Model model) {
         if (!name.equals(type)) {
-            final String packName = Model.packageOf(type);
-            final CodePackage p = model.getOrCreatePackage(packName);
-            usedPackages.add(p);
-            pack.addEfferent(p);
-            usedClasses.add(model.getOrCreateClass(type));
+            final CodeClass clazz = model.getOrCreateClass(type);
+            addUsedPackage(clazz.pack, 1);
+            pack.addEfferent(clazz.pack);
+            addUsedClass(clazz, 1);
         }
     }
 
     void addAnnotation(String type, Model model) {
         addImport(type, model);
-        annotations.add(model.getOrCreateClass(type));
+        addAnnotation(model.getOrCreateClass(type));
+    }
+
+    void addUsedPackage(CodePackage used, int count) {
+        if (usedPackages == null) {
+            usedPackages = new CountSet<>();
+        }
+        usedPackages.add(used, count);
+    }
+
+    void addUsedClass(CodeClass used, int count) {
+        if (usedClasses == null) {
+            usedClasses = new CountSet<>();
+        }
+        usedClasses.add(used, count);
+    }
+
+    void addAnnotation(CodeClass annotation) {
+        if (annotations == null) {
+            annotations = new HashSet<>();
+        }
+        annotations.add(annotation);
+    }
+
+    void addFields(List<MemberInfo> members) {
+        fields = addMembers(fields, members);
+    }
+
+    void addMethods(List<MemberInfo> members) {
+        methods = addMembers(methods, members);
+    }
+
+    private static List<MemberInfo> addMembers(List<MemberInfo> list, List<MemberInfo> members) {
+        if (members.isEmpty()) {
+            return list;
+        }
+        if (list == null) {
+            return new ArrayList<>(members);
+        }
+        list.addAll(members);
+        return list;
+    }
+
+    /**
+     * Add the data of a class of another model.
+     *
+     * @param other  the class to be merged into this class.
+     * @param model  the model this class belongs to.
+     * @param parsed if the other class has been parsed (and not only referenced).
+     */
+    void merge(CodeClass other, Model model, boolean parsed) {
+        for (final Map.Entry<CodePackage, Integer> entry : other.usedPackageCounts().entrySet()) {
+            addUsedPackage(model.getOrCreatePackage(entry.getKey().getName()), entry.getValue());
+        }
+        for (final Map.Entry<CodeClass, Integer> entry : other.usedClassCounts().entrySet()) {
+            addUsedClass(model.getOrCreateClass(entry.getKey().getName()), entry.getValue());
+        }
+        for (final CodeClass annotation : other.getAnnotations()) {
+            addAnnotation(model.getOrCreateClass(annotation.getName()));
+        }
+        addFields(other.getFields());
+        addMethods(other.getMethods());
+        if (parsed) {
+            if (!UNKNOWN_SOURCE.equals(other.sourceFile)) {
+                sourceFile = other.sourceFile;
+            }
+            classFile = other.classFile;
+            codeSize = other.codeSize;
+            totalSize = other.totalSize;
+            concrete = other.concrete;
+            codeLines = other.codeLines;
+            commentLines = other.commentLines;
+            emptyLines = other.emptyLines;
+            totalLines = other.totalLines;
+            this.parsed = true;
+        }
+    }
+
+    /**
+     * Replace all collections by immutable ones, see {@link Model#freeze()}.
+     */
+    void freeze() {
+        if (usedPackages != null) {
+            usedPackages.freeze();
+        }
+        if (usedClasses != null) {
+            usedClasses.freeze();
+        }
+        if (annotations != null) {
+            annotations = ArraySet.of(annotations);
+        }
+        fields = freeze(fields);
+        methods = freeze(methods);
+    }
+
+    private static List<MemberInfo> freeze(List<MemberInfo> members) {
+        return members == null ? null : Collections.unmodifiableList(Arrays.asList(members.toArray(new MemberInfo[0])));
+    }
+
+    /**
+     * @return if the class has been parsed or declared and not only referenced.
+     */
+    boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * Remove all parsed data, so the class is only referenced.
+     * This includes the line counts, so {@link Model#parseSources} must be run again to get them back.
+     */
+    void clear() {
+        usedPackages = null;
+        usedClasses = null;
+        annotations = null;
+        fields = null;
+        methods = null;
+        sourceFile = UNKNOWN_SOURCE;
+        classFile = null;
+        codeSize = 0;
+        totalSize = 0;
+        concrete = false;
+        parsed = false;
+        codeLines = 0;
+        commentLines = 0;
+        emptyLines = 0;
+        totalLines = 0;
     }
 
     public boolean equals(Object other) {
@@ -22,8 +22,6 @@ import java.lang.reflect.Modifier;
 import java.util.List;
 
 class CodeClassBuilder {
-    private static final char CLASS_DESCRIPTOR = 'L';
-    private static final char TYPE_END = ';';
 
     final CodeClass clazz;
     private final Model model;
@@ -56,10 +54,9 @@ class CodeClassBuilder {
     }
 
     public CodeClassBuilder addClassConstantReferences() throws IOException {
-        for (final Constant constant : constantPool) {
-            if (constant.tag == Constant.CLASS) {
-                final String name = constantPool.getUtf8(constant.nameIndex);
-                addImport(name);
+        for (int i = 1; i < constantPool.size(); i++) {
+            if (constantPool.getTag(i) == Constant.CLASS) {
+                addImport(constantPool.getClassConstantName(i));
             }
         }
         return this;
@@ -70,19 +67,21 @@ class CodeClassBuilder {
         return this;
     }
 
-    public CodeClassBuilder addMethodRefs(List<MemberInfo> methods) throws IOException {
-        addMemberAnnotationRefs(methods);
-        addMemberSignatureRefs(SignatureParser.Source.METHOD, methods);
+    public CodeClassBuilder addMethodRefs(List<MemberInfo> methods, List<AttributeInfo> attributes)
+            throws IOException {
+        addMemberAnnotationRefs(attributes);
+        addMemberSignatureRefs(SignatureParser.Source.METHOD, attributes);
         addMemberTypes(methods);
-        clazz.methods.addAll(methods);
+        clazz.addMethods(methods);
         return this;
     }
 
-    public CodeClassBuilder addFieldRefs(List<MemberInfo> fields) throws IOException {
-        addMemberAnnotationRefs(fields);
-        addMemberSignatureRefs(SignatureParser.Source.FIELD, fields);
+    public CodeClassBuilder addFieldRefs(List<MemberInfo> fields, List<AttributeInfo> attributes)
+            throws IOException {
+        addMemberAnnotationRefs(attributes);
+        addMemberSignatureRefs(SignatureParser.Source.FIELD, attributes);
         addMemberTypes(fields);
-        clazz.fields.addAll(fields);
+        clazz.addFields(fields);
         return this;
     }
 
@@ -112,6 +111,7 @@ class CodeClassBuilder {
         }
         clazz.codeSize = codeSize;
         clazz.totalSize = totalSize;
+        clazz.parsed = true;
         return this;
     }
 
@@ -123,19 +123,20 @@ class CodeClassBuilder {
         return this;
     }
 
-    private void addMemberAnnotationRefs(List<MemberInfo> infos) throws IOException {
-        for (final MemberInfo info : infos) {
-            if (info.annotations != null) {
-                addAnnotationReferences(info.annotations);
+    private void addMemberAnnotationRefs(List<AttributeInfo> attributes) throws IOException {
+        for (final AttributeInfo attribute : attributes) {
+            if (attribute.isAnnotation()) {
+                addAnnotationReferences(attribute);
             }
         }
     }
 
-    private void addMemberSignatureRefs(SignatureParser.Source source, List<MemberInfo> infos) throws IOException {
-        for (final MemberInfo info : infos) {
-            if (info.signature != null) {
-                final String name = constantPool.getUtf8(u2(info.signature.value, 0));
-                for (final String clazz : SignatureParser.parseSignature(source, name).getClasses()) {
+    private void addMemberSignatureRefs(SignatureParser.Source source, List<AttributeInfo> attributes)
+            throws IOException {
+        for (final AttributeInfo attribute : attributes) {
+            if (attribute.isSignature()) {
+                final String name = constantPool.getUtf8(u2(attribute.value, 0));
+                for (final String clazz : model.types.signatureTypes(source, name)) {
                     addImport(clazz);
                 }
             }
@@ -144,8 +145,7 @@ class CodeClassBuilder {
 
     private void addMemberTypes(List<MemberInfo> infos) throws IOException {
         for (final MemberInfo info : infos) {
-            final String[] types = descriptorToTypes(info.descriptor);
-            for (final String type : types) {
+            for (final String type : model.types.descriptorTypes(info.descriptor)) {
                 if (type.length() > 0) {
                     addImport(type);
                 }
@@ -162,7 +162,7 @@ class CodeClassBuilder {
     private void addAttributeSignatureRefs(AttributeInfo attribute) throws IOException {
         if (attribute.isSignature()) {
             final String name = constantPool.getUtf8(u2(attribute.value, 0));
-            for (final String clazz : SignatureParser.parseSignature(SignatureParser.Source.CLASS, name).getClasses()) {
+            for (final String clazz : model.types.signatureTypes(SignatureParser.Source.CLASS, name)) {
                 addImport(clazz);
             }
         }
@@ -247,17 +247,11 @@ class CodeClassBuilder {
     }
 
     private String getTypeName(String s) {
-        final String typed;
         if (s.length() > 0 && s.charAt(0) == '[') {
-            final String[] types = descriptorToTypes(s);
-            if (types.length == 0) {
-                return null; // primitives
-            }
-            typed = types[0];
-        } else {
-            typed = s;
+            final String[] types = model.types.descriptorTypes(s);
+            return types.length == 0 ? null : types[0]; // null for primitives
         }
-        return slashesToDots(typed);
+        return slashesToDots(s);
     }
 
     private String descriptorToType(String descriptor) {
@@ -266,27 +260,4 @@ class CodeClassBuilder {
         }
         return descriptor.substring(1, descriptor.length() - 1);
     }
-
-    private String[] descriptorToTypes(String descriptor) {
-        int typesCount = 0;
-        for (int i = 0; i < descriptor.length(); i++) {
-            if (descriptor.charAt(i) == TYPE_END) {
-                typesCount++;
-            }
-        }
-
-        final String[] types = new String[typesCount];
-
-        int typeIndex = 0;
-        for (int index = 0; index < descriptor.length(); index++) {
-            final int startIndex = descriptor.indexOf(CLASS_DESCRIPTOR, index);
-            if (startIndex < 0) {
-                break;
-            }
-            index = descriptor.indexOf(TYPE_END, startIndex + 1);
-            types[typeIndex++] = descriptor.substring(startIndex + 1, index);
-        }
-
-        return types;
-    }
 }
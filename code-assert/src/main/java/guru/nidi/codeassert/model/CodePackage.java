@@ -16,6 +16,7 @@
 package guru.nidi.codeassert.model;
 
 import guru.nidi.codeassert.config.LocationMatcher;
+import guru.nidi.codeassert.util.ArraySet;
 
 import java.util.*;
 
@@ -28,15 +29,13 @@ import java.util.*;
 
 public class CodePackage extends UsingElement<CodePackage> {
     private final String name;
-    private final Set<CodeClass> classes;
-    private final List<CodePackage> uses;
-    private final Set<CodeClass> annotations;
+    private Set<CodeClass> classes;
+    private Set<CodePackage> uses;
+    private Set<CodeClass> annotations;
 
     CodePackage(String name) {
         this.name = name;
         classes = new HashSet<>();
-        uses = new ArrayList<>();
-        annotations = new HashSet<>();
     }
 
     @Override
@@ -49,23 +48,76 @@ public class CodePackage extends UsingElement<CodePackage> {
     }
 
     public void addAnnotation(CodeClass clazz) {
+        if (annotations == null) {
+            annotations = new HashSet<>();
+        }
         annotations.add(clazz);
     }
 
+    /**
+     * Replace all collections by immutable ones, see {@link Model#freeze()}.
+     */
+    void freeze() {
+        classes = ArraySet.of(classes);
+        if (uses != null) {
+            uses = ArraySet.of(uses);
+        }
+        if (annotations != null) {
+            annotations = ArraySet.of(annotations);
+        }
+    }
+
+    void clearAnnotations() {
+        annotations = null;
+    }
+
+    void removeClass(CodeClass clazz) {
+        classes.remove(clazz);
+    }
+
     public Collection<CodeClass> getClasses() {
         return classes;
     }
 
     public Collection<CodeClass> getAnnotations() {
-        return annotations;
+        return annotations == null ? Collections.<CodeClass>emptySet() : annotations;
     }
 
+    /**
+     * Called for every import of every class, so the used packages are a set that keeps the order they are added.
+     */
     void addEfferent(CodePackage jPackage) {
-        if (!jPackage.getName().equals(getName()) && !uses.contains(jPackage)) {
+        if (!jPackage.getName().equals(getName())) {
+            if (uses == null) {
+                uses = new LinkedHashSet<>();
+            }
             uses.add(jPackage);
         }
     }
 
+    /**
+     * Remove the packages that are not used anymore by any class of this package.
+     */
+    void removeUnusedEfferents() {
+        if (uses == null) {
+            return;
+        }
+        final Iterator<CodePackage> it = uses.iterator();
+        while (it.hasNext()) {
+            final CodePackage use = it.next();
+            boolean used = false;
+            for (final CodeClass clazz : classes) {
+                if (clazz.uses(use)) {
+                    used = true;
+                    break;
+                }
+            }
+            if (!used) {
+                it.remove();
+            }
+        }
+    }
+
     @Override
     public Set<String> usedVia(UsingElement<CodePackage> to) {
         final Set<String> res = new HashSet<>();
@@ -94,7 +146,7 @@ public class CodePackage extends UsingElement<CodePackage> {
 
     @Override
     public Collection<CodePackage> uses() {
-        return uses;
+        return uses == null ? Collections.<CodePackage>emptySet() : uses;
     }
 
     public boolean equals(Object other) {
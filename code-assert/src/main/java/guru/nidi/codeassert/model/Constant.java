@@ -15,8 +15,8 @@
  */
 package guru.nidi.codeassert.model;
 
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 final class Constant {
     static final int
@@ -36,61 +36,42 @@ final class Constant {
             METHOD_TYPE = 16,
             INVOKEDYNAMIC = 18;
 
-    final byte tag;
-    final int nameIndex;
-    final int typeIndex;
-    final Object value;
+    private Constant() {
+    }
 
-    static Constant fromData(DataInputStream in) throws IOException {
-        final byte tag = in.readByte();
+    /**
+     * @param tag the tag of the constant.
+     * @param in  the data, positioned directly after the tag.
+     * @return the number of bytes the constant occupies after its tag.
+     * @throws IOException if the tag is unknown.
+     */
+    static int length(byte tag, ByteBuffer in) throws IOException {
         switch (tag) {
             case CLASS:
             case STRING:
             case METHOD_TYPE:
-                return new Constant(tag, in.readUnsignedShort());
+                return 2;
+            case METHOD_HANDLE:
+                return 3;
             case FIELD:
             case METHOD:
             case INTERFACEMETHOD:
             case NAMEANDTYPE:
             case INVOKEDYNAMIC:
-                return new Constant(tag, in.readUnsignedShort(), in.readUnsignedShort());
             case INTEGER:
-                return new Constant(tag, in.readInt());
             case FLOAT:
-                return new Constant(tag, in.readFloat());
+                return 4;
             case LONG:
-                return new Constant(tag, in.readLong());
             case DOUBLE:
-                return new Constant(tag, in.readDouble());
+                return 8;
             case UTF8:
-                return new Constant(tag, in.readUTF());
-            case METHOD_HANDLE:
-                return new Constant(tag, in.readByte(), in.readUnsignedShort());
+                return 2 + (in.getShort(in.position()) & 0xFFFF);
             default:
                 throw new IOException("Unknown constant: " + tag);
         }
     }
 
-    private Constant(byte tag, int nameIndex) {
-        this(tag, nameIndex, -1, null);
-    }
-
-    private Constant(byte tag, Object value) {
-        this(tag, -1, -1, value);
-    }
-
-    private Constant(byte tag, int nameIndex, int typeIndex) {
-        this(tag, nameIndex, typeIndex, null);
-    }
-
-    private Constant(byte tag, int nameIndex, int typeIndex, Object value) {
-        this.tag = tag;
-        this.nameIndex = nameIndex;
-        this.typeIndex = typeIndex;
-        this.value = value;
-    }
-
-    boolean isBig() {
+    static boolean isBig(byte tag) {
         return tag == DOUBLE || tag == LONG;
     }
 }
@@ -15,85 +15,162 @@
  */
 package guru.nidi.codeassert.model;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
-final class ConstantPool implements Iterable<Constant> {
-    private final Constant[] pool;
+import static guru.nidi.codeassert.model.ClassFileParser.u2;
 
-    private ConstantPool(Constant[] pool) {
-        this.pool = pool;
+/**
+ * The constant pool only records the tag and the position of each entry.
+ * UTF8 entries are decoded when they are requested.
+ */
+final class ConstantPool {
+    private final ByteBuffer data;
+    private final Symbols symbols;
+    private final byte[] tags;
+    private final int[] offsets;
+    private final String[] utf8s;
+    private final String[] classNames;
+    private MemberRef[] memberRefs;
+
+    private ConstantPool(ByteBuffer data, Symbols symbols, byte[] tags, int[] offsets) {
+        this.data = data;
+        this.symbols = symbols;
+        this.tags = tags;
+        this.offsets = offsets;
+        utf8s = new String[tags.length];
+        classNames = new String[tags.length];
     }
 
-    public static ConstantPool fromData(DataInputStream in) throws IOException {
-        final int size = in.readUnsignedShort();
-        final Constant[] pool = new Constant[size];
+    public static ConstantPool fromData(ByteBuffer in, Symbols symbols) throws IOException {
+        final int size = u2(in);
+        final byte[] tags = new byte[size];
+        final int[] offsets = new int[size];
         for (int i = 1; i < size; i++) {
-            final Constant constant = Constant.fromData(in);
-            pool[i] = constant;
+            final byte tag = in.get();
+            tags[i] = tag;
+            offsets[i] = in.position();
+            ClassFileParser.skip(in, Constant.length(tag, in));
 
             // 8-byte constants use two constant pool entries
-            if (constant.isBig()) {
+            if (Constant.isBig(tag)) {
                 i++;
             }
         }
-        return new ConstantPool(pool);
+        return new ConstantPool(in, symbols, tags, offsets);
     }
 
-    public Constant getEntry(int entryIndex) throws IOException {
-        if (entryIndex < 0 || entryIndex >= pool.length) {
+    public int size() {
+        return tags.length;
+    }
+
+    public byte getTag(int entryIndex) throws IOException {
+        if (entryIndex < 0 || entryIndex >= tags.length) {
             throw new IOException("Illegal constant pool index : " + entryIndex);
         }
-
-        return pool[entryIndex];
+        return tags[entryIndex];
     }
 
     public String getClassConstantName(int entryIndex) throws IOException {
-        final Constant entry = getEntry(entryIndex);
-        if (entry == null) {
+        final byte tag = getTag(entryIndex);
+        if (tag == 0) {
             return "";
         }
-        return slashesToDots(getUtf8(entry.nameIndex));
+        if (tag != Constant.CLASS) {
+            throw new IOException("Constant pool entry is not a CLASS type: " + entryIndex);
+        }
+        final int nameIndex = data.getShort(offsets[entryIndex]) & 0xFFFF;
+        if (classNames[nameIndex] == null) {
+            checkUtf8(nameIndex);
+            classNames[nameIndex] = decode(offsets[nameIndex], '.');
+        }
+        return classNames[nameIndex];
     }
 
-    private String slashesToDots(String s) {
-        return s.replace('/', '.');
+    /**
+     * Get a field or method reference, used only when the dependencies of members are analyzed.
+     */
+    public MemberRef getMemberRef(int entryIndex) throws IOException {
+        final byte tag = getTag(entryIndex);
+        if (tag != Constant.FIELD && tag != Constant.METHOD && tag != Constant.INTERFACEMETHOD) {
+            throw new IOException("Constant pool entry is not a member reference: " + entryIndex);
+        }
+        if (memberRefs == null) {
+            memberRefs = new MemberRef[tags.length];
+        }
+        if (memberRefs[entryIndex] == null) {
+            final int offset = offsets[entryIndex];
+            final String className = symbols.intern(getClassConstantName(data.getShort(offset) & 0xFFFF));
+            final int nameAndType = data.getShort(offset + 2) & 0xFFFF;
+            if (getTag(nameAndType) != Constant.NAMEANDTYPE) {
+                throw new IOException("Constant pool entry is not a NAMEANDTYPE type: " + nameAndType);
+            }
+            final int nameOffset = offsets[nameAndType];
+            memberRefs[entryIndex] = new MemberRef(tag != Constant.FIELD, className,
+                    getSymbol(data.getShort(nameOffset) & 0xFFFF), getSymbol(data.getShort(nameOffset + 2) & 0xFFFF));
+        }
+        return memberRefs[entryIndex];
     }
 
     public String getUtf8(int entryIndex) throws IOException {
-        final Constant entry = getEntry(entryIndex);
-        if (entry.tag == Constant.UTF8) {
-            return (String) entry.value;
+        checkUtf8(entryIndex);
+        if (utf8s[entryIndex] == null) {
+            utf8s[entryIndex] = decode(offsets[entryIndex], '/');
         }
-        throw new IOException("Constant pool entry is not a UTF8 type: " + entryIndex);
+        return utf8s[entryIndex];
     }
 
-    public Iterator<Constant> iterator() {
-        return new Iterator<Constant>() {
-            int pos = 1;
+    /**
+     * Get a UTF8 entry that is kept in the model, as canonical instance.
+     */
+    public String getSymbol(int entryIndex) throws IOException {
+        return symbols.intern(getUtf8(entryIndex));
+    }
 
-            @Override
-            public boolean hasNext() {
-                return pos < pool.length;
-            }
+    private void checkUtf8(int entryIndex) throws IOException {
+        if (getTag(entryIndex) != Constant.UTF8) {
+            throw new IOException("Constant pool entry is not a UTF8 type: " + entryIndex);
+        }
+    }
 
-            @Override
-            public Constant next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                final Constant constant = pool[pos];
-                pos += constant.isBig() ? 2 : 1;
-                return constant;
+    /**
+     * Decode a modified UTF-8 string as written by {@link java.io.DataOutput#writeUTF(String)}.
+     *
+     * @param offset the position of the length of the string.
+     * @param slash  the character to replace '/' with.
+     * @return the decoded string.
+     * @throws UTFDataFormatException if the data is not valid modified UTF-8.
+     */
+    private String decode(int offset, char slash) throws UTFDataFormatException {
+        final int start = offset + 2;
+        final int end = start + (data.getShort(offset) & 0xFFFF);
+        final char[] chars = new char[end - start];
+        int count = 0;
+        int pos = start;
+        while (pos < end) {
+            final int c = data.get(pos) & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = c == '/' ? slash : (char) c;
+                pos++;
+            } else if ((c >> 5) == 0x6 && pos + 1 < end) {
+                chars[count++] = (char) ((c & 0x1F) << 6 | continuation(pos + 1));
+                pos += 2;
+            } else if ((c >> 4) == 0xE && pos + 2 < end) {
+                chars[count++] = (char) ((c & 0x0F) << 12 | continuation(pos + 1) << 6 | continuation(pos + 2));
+                pos += 3;
+            } else {
+                throw new UTFDataFormatException("Malformed input around byte " + pos);
             }
+        }
+        return new String(chars, 0, count);
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
-            }
-        };
+    private int continuation(int pos) throws UTFDataFormatException {
+        final int c = data.get(pos);
+        if ((c & 0xC0) != 0x80) {
+            throw new UTFDataFormatException("Malformed input around byte " + pos);
+        }
+        return c & 0x3F;
     }
 }
-
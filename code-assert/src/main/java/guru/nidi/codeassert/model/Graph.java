@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.config.LocationMatcher;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable snapshot of the dependencies between the elements of a model.
+ * The elements are numbered densely from 0 to {@link #size()} - 1, the dependencies are stored
+ * in compressed sparse row format: The elements used by element <code>i</code> are
+ * <code>target(e)</code> for <code>edgeStart(i) &lt;= e &lt; edgeEnd(i)</code>,
+ * in the same order as {@link UsingElement#uses()}.
+ * <p>
+ * To find the elements matching a pattern, the elements are grouped by their sorted package names,
+ * so only the packages starting with the literal prefix of the pattern are checked.
+ * The result for each pattern is kept, so it can be reused by all rules using the pattern.
+ *
+ * @param <T> the type of the elements.
+ */
+public final class Graph<T extends UsingElement<T>> {
+    private final List<T> elements;
+    private final Map<T, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] counts;
+    private final int[] sortedTargets;
+    private final String[] packageNames;
+    private final int[][] packageElements;
+    private final ConcurrentMap<LocationMatcher, int[]> matches = new ConcurrentHashMap<>();
+
+    private Graph(List<T> elements, Map<T, Integer> ids, int[] offsets, int[] targets, int[] counts) {
+        this.elements = elements;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.counts = counts;
+        sortedTargets = targets.clone();
+        for (int i = 0; i < elements.size(); i++) {
+            Arrays.sort(sortedTargets, offsets[i], offsets[i + 1]);
+        }
+        final SortedMap<String, List<Integer>> byPackage = new TreeMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            final String pack = elements.get(i).getPackageName();
+            List<Integer> list = byPackage.get(pack);
+            if (list == null) {
+                list = new ArrayList<>();
+                byPackage.put(pack, list);
+            }
+            list.add(i);
+        }
+        packageNames = byPackage.keySet().toArray(new String[0]);
+        packageElements = new int[packageNames.length][];
+        for (int p = 0; p < packageNames.length; p++) {
+            final List<Integer> list = byPackage.get(packageNames[p]);
+            packageElements[p] = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                packageElements[p][i] = list.get(i);
+            }
+        }
+    }
+
+    static Graph<CodePackage> ofPackages(Collection<CodePackage> packages) {
+        final List<CodePackage> elements = new ArrayList<>(packages);
+        final Map<CodePackage, Integer> ids = ids(elements);
+        final int[] offsets = new int[elements.size() + 1];
+        for (int i = 0; i < elements.size(); i++) {
+            offsets[i + 1] = offsets[i] + elements.get(i).uses().size();
+        }
+        final int[] targets = new int[offsets[elements.size()]];
+        final int[] counts = new int[targets.length];
+        final int[] packageCounts = new int[elements.size()];
+        int e = 0;
+        for (final CodePackage pack : elements) {
+            for (final CodeClass clazz : pack.getClasses()) {
+                for (final Map.Entry<CodePackage, Integer> count : clazz.usedPackageCounts().entrySet()) {
+                    packageCounts[ids.get(count.getKey())] += count.getValue();
+                }
+            }
+            for (final CodePackage use : pack.uses()) {
+                final int target = ids.get(use);
+                targets[e] = target;
+                counts[e] = packageCounts[target];
+                e++;
+            }
+            Arrays.fill(packageCounts, 0);
+        }
+        return new Graph<>(elements, ids, offsets, targets, counts);
+    }
+
+    static Graph<CodeClass> ofClasses(Collection<CodeClass> classes) {
+        final List<CodeClass> elements = new ArrayList<>(classes);
+        final Map<CodeClass, Integer> ids = ids(elements);
+        final int[] offsets = new int[elements.size() + 1];
+        for (int i = 0; i < elements.size(); i++) {
+            offsets[i + 1] = offsets[i] + elements.get(i).usedClassCounts().size();
+        }
+        final int[] targets = new int[offsets[elements.size()]];
+        final int[] counts = new int[targets.length];
+        int e = 0;
+        for (final CodeClass clazz : elements) {
+            for (final Map.Entry<CodeClass, Integer> count : clazz.usedClassCounts().entrySet()) {
+                targets[e] = ids.get(count.getKey());
+                counts[e] = count.getValue();
+                e++;
+            }
+        }
+        return new Graph<>(elements, ids, offsets, targets, counts);
+    }
+
+    private static <T> Map<T, Integer> ids(List<T> elements) {
+        final Map<T, Integer> ids = new HashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            ids.put(elements.get(i), i);
+        }
+        return ids;
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public T element(int id) {
+        return elements.get(id);
+    }
+
+    public List<T> elements(int[] ids) {
+        final List<T> res = new ArrayList<>(ids.length);
+        for (final int id : ids) {
+            res.add(elements.get(id));
+        }
+        return res;
+    }
+
+    /**
+     * @param elem an element.
+     * @return the id of the element or -1 if it is not part of this graph.
+     */
+    public int id(T elem) {
+        final Integer id = ids.get(elem);
+        return id == null ? -1 : id;
+    }
+
+    public int edgeStart(int id) {
+        return offsets[id];
+    }
+
+    public int edgeEnd(int id) {
+        return offsets[id + 1];
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * @param edge an edge.
+     * @return how many times the source element references the target element.
+     */
+    public int count(int edge) {
+        return counts[edge];
+    }
+
+    public boolean uses(int from, int to) {
+        return Arrays.binarySearch(sortedTargets, offsets[from], offsets[from + 1], to) >= 0;
+    }
+
+    /**
+     * @param matcher the matcher to use.
+     * @return the ids of all elements matching the given matcher, in ascending order.
+     * The array is shared by all callers and must not be changed.
+     */
+    public int[] matching(LocationMatcher matcher) {
+        int[] res = matches.get(matcher);
+        if (res == null) {
+            res = findMatching(matcher);
+            matches.putIfAbsent(matcher, res);
+        }
+        return res;
+    }
+
+    private int[] findMatching(LocationMatcher matcher) {
+        final String prefix = matcher.packagePrefix();
+        final int[] res = new int[elements.size()];
+        int count = 0;
+        for (int p = firstPackage(prefix); p < packageNames.length && packageNames[p].startsWith(prefix); p++) {
+            if (matcher.matchesPackagePattern(packageNames[p])) {
+                for (final int id : packageElements[p]) {
+                    if (elements.get(id).isMatchedBy(matcher)) {
+                        res[count++] = id;
+                    }
+                }
+            }
+        }
+        Arrays.sort(res, 0, count);
+        return Arrays.copyOf(res, count);
+    }
+
+    /**
+     * @return the index of the first package name that is not less than the prefix.
+     */
+    private int firstPackage(String prefix) {
+        final int pos = Arrays.binarySearch(packageNames, prefix);
+        return pos < 0 ? -pos - 1 : pos;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.AnalyzerException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the class headers of a range of files.
+ * Archives usually contain many classes, so ranges are split down to a few files.
+ */
+@SuppressWarnings("serial")
+class HeaderTask extends RecursiveTask<List<ClassHeader>> {
+    private static final int THRESHOLD = 4;
+
+    private final List<File> files;
+    private final Symbols symbols;
+    private final int from;
+    private final int to;
+
+    HeaderTask(List<File> files, Symbols symbols) {
+        this(files, symbols, 0, files.size());
+    }
+
+    private HeaderTask(List<File> files, Symbols symbols, int from, int to) {
+        this.files = files;
+        this.symbols = symbols;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected List<ClassHeader> compute() {
+        if (to - from <= THRESHOLD) {
+            return scanAll();
+        }
+        final int mid = (from + to) >>> 1;
+        final HeaderTask left = new HeaderTask(files, symbols, from, mid);
+        left.fork();
+        final List<ClassHeader> right = new HeaderTask(files, symbols, mid, to).compute();
+        final List<ClassHeader> res = left.join();
+        res.addAll(right);
+        return res;
+    }
+
+    List<ClassHeader> scanAll() {
+        final ClassFileParser parser = new ClassFileParser();
+        final List<ClassHeader> headers = new ArrayList<>();
+        try {
+            for (int i = from; i < to; i++) {
+                final File file = files.get(i);
+                if (Model.isClass(file.getName())) {
+                    headers.add(parser.parseHeader(ClassFileParser.read(file), file.getPath(), symbols));
+                } else if (Model.isArchive(file.getName())) {
+                    scanArchive(parser, file, headers);
+                }
+            }
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem scanning class headers", e);
+        }
+        return headers;
+    }
+
+    private void scanArchive(ClassFileParser parser, File archive, List<ClassHeader> headers) throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (final ZipEntry entry : Model.entries(zip)) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    scan(parser, archive.getPath() + "!/" + entry.getName(), in, entry.getSize(), headers);
+                }
+            }
+        }
+    }
+
+    private void scan(ClassFileParser parser, String location, InputStream in, long size, List<ClassHeader> headers)
+            throws IOException {
+        if (Model.isArchive(location)) {
+            final JarInputStream jar = new JarInputStream(in);
+            ZipEntry entry;
+            while ((entry = jar.getNextEntry()) != null) {
+                try {
+                    if (!entry.isDirectory()) {
+                        scan(parser, location + "!/" + entry.getName(), jar, entry.getSize(), headers);
+                    }
+                } finally {
+                    jar.closeEntry();
+                }
+            }
+        } else if (Model.isClass(location)) {
+            headers.add(parser.parseHeader(ByteBuffer.wrap(ClassFileParser.read(in, size)), location, symbols));
+        }
+    }
+}
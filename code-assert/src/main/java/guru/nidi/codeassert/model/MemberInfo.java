@@ -15,35 +15,45 @@
  */
 package guru.nidi.codeassert.model;
 
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
 
+import static guru.nidi.codeassert.model.ClassFileParser.u2;
+
+/**
+ * A field or method of a class.
+ * Only flat data is kept, the attributes of a member are only needed while its class is built.
+ */
 public final class MemberInfo {
     private final int accessFlags;
     private final String name;
     final String descriptor;
-    final AttributeInfo annotations;
-    final AttributeInfo signature;
     final int codeSize;
+    final MemberRef[] usedMembers;
 
-    private MemberInfo(int accessFlags, String name, String descriptor,
-                       AttributeInfo annotations, AttributeInfo signature, int codeSize) {
+    MemberInfo(int accessFlags, String name, String descriptor, int codeSize, MemberRef[] usedMembers) {
         this.accessFlags = accessFlags;
         this.name = name;
         this.descriptor = descriptor;
-        this.annotations = annotations;
-        this.signature = signature;
         this.codeSize = codeSize;
+        this.usedMembers = usedMembers;
     }
 
-    static MemberInfo fromData(DataInputStream in, ConstantPool constantPool) throws IOException {
-        final int access = in.readUnsignedShort();
-        final String name = constantPool.getUtf8(in.readUnsignedShort());
-        final String descriptor = constantPool.getUtf8(in.readUnsignedShort());
-        final int attributesCount = in.readUnsignedShort();
+    /**
+     * @param attributes  the annotations and signature of the member are added to this list.
+     * @param usedMembers if the code of the member should be analyzed for the fields and methods it uses.
+     */
+    static MemberInfo fromData(ByteBuffer in, ConstantPool constantPool, List<AttributeInfo> attributes,
+                               boolean usedMembers) throws IOException {
+        final int access = u2(in);
+        final String name = constantPool.getSymbol(u2(in));
+        final String descriptor = constantPool.getSymbol(u2(in));
+        final int attributesCount = u2(in);
         AttributeInfo annotations = null;
         AttributeInfo signature = null;
         int codeSize = 0;
+        MemberRef[] used = null;
         for (int a = 0; a < attributesCount; a++) {
             final AttributeInfo attribute = AttributeInfo.fromData(in, constantPool);
             if (attribute.isAnnotation()) {
@@ -53,10 +63,19 @@ public final class MemberInfo {
                 signature = attribute;
             }
             if (attribute.isCode()) {
-                codeSize = attribute.value.length;
+                codeSize = attribute.length;
+                if (usedMembers) {
+                    used = Bytecode.usedMembers(in, in.position() - attribute.length, constantPool);
+                }
             }
         }
-        return new MemberInfo(access, name, descriptor, annotations, signature, codeSize);
+        if (annotations != null) {
+            attributes.add(annotations);
+        }
+        if (signature != null) {
+            attributes.add(signature);
+        }
+        return new MemberInfo(access, name, descriptor, codeSize, used);
     }
 
     public int getAccessFlags() {
@@ -67,7 +86,21 @@ public final class MemberInfo {
         return name;
     }
 
+    public String getDescriptor() {
+        return descriptor;
+    }
+
     public int getCodeSize() {
         return codeSize;
     }
+
+    /**
+     * @return the fields and methods used by the code of this member.
+     * Always empty if the model has not been created {@link Model#withMemberDependencies() with member dependencies}.
+     */
+    public List<MemberRef> getUsedMembers() {
+        return usedMembers == null
+                ? Collections.<MemberRef>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(usedMembers));
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+/**
+ * A field or method that is used by the code of a method.
+ */
+public final class MemberRef {
+    private final boolean method;
+    private final String className;
+    private final String name;
+    private final String descriptor;
+
+    MemberRef(boolean method, String className, String name, String descriptor) {
+        this.method = method;
+        this.className = className;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    public boolean isMethod() {
+        return method;
+    }
+
+    public boolean isField() {
+        return !method;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final MemberRef memberRef = (MemberRef) o;
+        return method == memberRef.method
+                && className.equals(memberRef.className)
+                && name.equals(memberRef.name)
+                && descriptor.equals(memberRef.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+        int res = method ? 1 : 0;
+        res = 31 * res + className.hashCode();
+        res = 31 * res + name.hashCode();
+        res = 31 * res + descriptor.hashCode();
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return className + "." + name + (method ? "" : ":") + descriptor;
+    }
+}
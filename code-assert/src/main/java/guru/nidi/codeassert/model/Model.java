@@ -16,19 +16,67 @@
 package guru.nidi.codeassert.model;
 
 import guru.nidi.codeassert.AnalyzerException;
+import guru.nidi.codeassert.config.Location;
+import guru.nidi.codeassert.config.LocationMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.jar.JarInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static java.util.Arrays.asList;
 
 public class Model {
     public static final String UNNAMED_PACKAGE = "<Unnamed Package>";
+    private static final Logger LOG = LoggerFactory.getLogger(Model.class);
 
-    final Map<String, CodePackage> packages = new HashMap<>();
-    final Map<String, CodeClass> classes = new HashMap<>();
+    final Map<String, CodePackage> packages;
+    final Map<String, CodeClass> classes;
+    final Symbols symbols;
+    final TypeCache types;
+    private final List<LocationMatcher> includes;
+    private final List<LocationMatcher> excludes;
+    private final boolean frozen;
+    boolean memberDependencies;
+    private ModelCache cache;
+
+    public Model() {
+        this(new Symbols(), new TypeCache(), new ArrayList<LocationMatcher>(), new ArrayList<LocationMatcher>());
+    }
+
+    private Model(Symbols symbols, TypeCache types, List<LocationMatcher> includes, List<LocationMatcher> excludes) {
+        packages = new HashMap<>();
+        classes = new HashMap<>();
+        this.symbols = symbols;
+        this.types = types;
+        this.includes = includes;
+        this.excludes = excludes;
+        frozen = false;
+    }
+
+    /**
+     * A frozen model with the (already frozen) content of the given model.
+     * The content is only reachable through final fields and never changes afterwards,
+     * so it is safely published when this constructor has finished.
+     * The non-final settings {@link #memberDependencies} and {@link #cache} are only used for parsing,
+     * which a frozen model never does.
+     */
+    private Model(Model model) {
+        packages = Collections.unmodifiableMap(model.packages);
+        classes = Collections.unmodifiableMap(model.classes);
+        symbols = model.symbols;
+        types = model.types;
+        includes = Collections.unmodifiableList(new ArrayList<>(model.includes));
+        excludes = Collections.unmodifiableList(new ArrayList<>(model.excludes));
+        frozen = true;
+        memberDependencies = model.memberDependencies;
+    }
 
     public static Model from(File... files) {
         return from(asList(files));
@@ -38,16 +86,202 @@ public class Model {
         return new Model().and(files);
     }
 
+    /**
+     * Create a model by parsing the given files concurrently.
+     * The resulting model is the same as the one created by {@link #from(List)}.
+     *
+     * @param files       the class files and archives to parse.
+     * @param parallelism the number of threads to use.
+     * @return the model.
+     */
+    public static Model from(List<File> files, int parallelism) {
+        return new Model().and(files, parallelism);
+    }
+
+    /**
+     * Create a model from class files that are already in memory, e.g. the output of an in-memory compiler.
+     *
+     * @param classes the contents of the class files by their name, the buffers are read from their position
+     *                to their limit and are not modified.
+     * @return the model.
+     */
+    public static Model fromClassBytes(Map<String, ByteBuffer> classes) {
+        return new Model().andClassBytes(classes);
+    }
+
+    /**
+     * Load a model written by {@link #save(File)}, e.g. by the code-assert javac plugin during compilation.
+     * This is much faster than parsing the class files again.
+     *
+     * @param file the model file.
+     * @return the model.
+     */
+    public static Model load(File file) {
+        try {
+            return ModelCache.load(file);
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem loading a Model", e);
+        }
+    }
+
+    /**
+     * Write this model in a compact binary format that can be read by {@link #load(File)}.
+     * This includes the line counts of {@link #parseSources}.
+     *
+     * @param file the model file, the parent directories are created if needed.
+     */
+    public void save(File file) {
+        try {
+            ModelCache.save(this, file);
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem saving a Model", e);
+        }
+    }
+
+    /**
+     * Keep the parsed content of the files added to this model in the given directory.
+     * Unchanged files are then loaded from there instead of being parsed again.
+     *
+     * @param directory the cache directory, it is created if needed.
+     * @return this model.
+     */
+    public Model withCache(File directory) {
+        checkNotFrozen();
+        cache = new ModelCache(directory);
+        return this;
+    }
+
+    /**
+     * Also record which fields and methods are used by the code of each method,
+     * see {@link MemberInfo#getUsedMembers()}.
+     * This needs all method bodies to be analyzed and makes parsing considerably slower.
+     *
+     * @return this model.
+     */
+    public Model withMemberDependencies() {
+        checkNotFrozen();
+        memberDependencies = true;
+        return this;
+    }
+
+    /**
+     * Only parse the classes matching one of the given patterns.
+     * Classes that are not parsed are still part of the model if they are used by a parsed class.
+     *
+     * @param patterns the classes to parse, in the form [package][[/]class], see {@link LocationMatcher}.
+     * @return this model.
+     */
+    public Model including(String... patterns) {
+        checkNotFrozen();
+        addMatchers(includes, patterns);
+        return this;
+    }
+
+    /**
+     * Don't parse the classes matching one of the given patterns.
+     * Classes that are not parsed are still part of the model if they are used by a parsed class.
+     *
+     * @param patterns the classes not to parse, in the form [package][[/]class], see {@link LocationMatcher}.
+     * @return this model.
+     */
+    public Model excluding(String... patterns) {
+        checkNotFrozen();
+        addMatchers(excludes, patterns);
+        return this;
+    }
+
+    /**
+     * Create an immutable copy of this model, e.g. to share it between tests running in parallel.
+     * All collections of the copy and of its packages and classes are immutable,
+     * the ones of the packages and classes are also array backed.
+     * The copy can safely be used by multiple threads, trying to change it throws an exception.
+     * This model is not changed.
+     *
+     * @return the frozen copy.
+     */
+    public Model freeze() {
+        if (frozen) {
+            return this;
+        }
+        final Set<CodeClass> parsed = new HashSet<>();
+        for (final CodeClass clazz : classes.values()) {
+            if (clazz.isParsed()) {
+                parsed.add(clazz);
+            }
+        }
+        final Model copy = emptyCopy();
+        copy.merge(this, parsed);
+        for (final CodePackage pack : copy.packages.values()) {
+            pack.freeze();
+        }
+        for (final CodeClass clazz : copy.classes.values()) {
+            clazz.freeze();
+        }
+        return new Model(copy);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("A frozen model cannot be changed.");
+        }
+    }
+
+    private static void addMatchers(List<LocationMatcher> matchers, String... patterns) {
+        for (final String pattern : patterns) {
+            matchers.add(new LocationMatcher(Location.of(pattern)));
+        }
+    }
+
+    boolean isIncluded(String className) {
+        return (includes.isEmpty() || matchesAny(includes, className)) && !matchesAny(excludes, className);
+    }
+
+    private static boolean matchesAny(List<LocationMatcher> matchers, String className) {
+        for (final LocationMatcher matcher : matchers) {
+            if (matcher.matchesClass(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A description of the classes that are parsed, used to check if cached data is still valid.
+     */
+    String filter() {
+        return includes + " " + excludes + (memberDependencies ? " members" : "");
+    }
+
+    /**
+     * An empty model with the same settings, to parse a part of this model into.
+     */
+    Model emptyCopy() {
+        final Model copy = new Model(symbols, types, includes, excludes);
+        copy.memberDependencies = memberDependencies;
+        return copy;
+    }
+
     public Model and(File... files) {
         return and(asList(files));
     }
 
     public Model and(List<File> files) {
+        checkNotFrozen();
+        if (cache != null) {
+            new ModelTask.Files(files, this, cache, false).parseAll(new ModelTask.Part(this));
+            return this;
+        }
         try {
             final ClassFileParser classParser = new ClassFileParser();
             for (final File file : files) {
-                try (InputStream in = new FileInputStream(file)) {
-                    add(classParser, file.getName(), in);
+                if (isClass(file.getName())) {
+                    classParser.parse(file, this);
+                } else if (isArchive(file.getName())) {
+                    add(classParser, file);
                 }
             }
             return this;
@@ -56,8 +290,251 @@ public class Model {
         }
     }
 
+    public Model and(List<File> files, int parallelism) {
+        checkNotFrozen();
+        if (parallelism <= 1) {
+            return and(files);
+        }
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final ModelTask.Part part = pool.invoke(new ModelTask.Files(files, this, cache, true));
+            merge(part.model, part.parsed);
+            return this;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Add class files that are already in memory to this model.
+     * A configured cache is not used for them, as they have no file to check for changes.
+     *
+     * @param classes the contents of the class files by their name, the buffers are read from their position
+     *                to their limit and are not modified.
+     * @return this model.
+     */
+    public Model andClassBytes(Map<String, ByteBuffer> classes) {
+        return andClassBytes(classes, 1);
+    }
+
+    /**
+     * Add class files that are already in memory to this model, parsing them concurrently.
+     *
+     * @param classes     the contents of the class files by their name.
+     * @param parallelism the number of threads to use.
+     * @return this model.
+     * @see #andClassBytes(Map)
+     */
+    public Model andClassBytes(Map<String, ByteBuffer> classes, int parallelism) {
+        checkNotFrozen();
+        final ModelTask.Classes task = new ModelTask.Classes(new ArrayList<>(classes.values()), this, parallelism > 1);
+        if (parallelism <= 1) {
+            task.parseAll(new ModelTask.Part(this));
+            return this;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final ModelTask.Part part = pool.invoke(task);
+            merge(part.model, part.parsed);
+            return this;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Update the model after class files have been changed, added or removed.
+     * The old content of these files is removed from the model and the changed files are parsed again.
+     * Classes and packages that are not used anymore are removed.
+     * The line counts of the changed classes are reset, {@link #parseSources} must be run again to count them.
+     *
+     * @param changed the changed or added class files.
+     * @param removed the removed class files.
+     * @return this model.
+     */
+    public Model update(Collection<File> changed, Collection<File> removed) {
+        checkNotFrozen();
+        for (final File file : changed) {
+            if (!isClass(file.getName())) {
+                throw new IllegalArgumentException("Only class files can be updated: " + file);
+            }
+        }
+        final Map<File, CodeClass> classFiles = classFiles();
+        final Set<CodeClass> candidates = new HashSet<>();
+        final Set<CodePackage> packs = new HashSet<>();
+        final List<File> all = new ArrayList<>(changed);
+        all.addAll(removed);
+        for (final File file : all) {
+            final CodeClass old = classFiles.get(file.getAbsoluteFile());
+            if (old != null) {
+                candidates.add(old);
+                candidates.addAll(old.usedClasses());
+                packs.add(old.getPackage());
+                if (old.getName().endsWith(".package-info")) {
+                    old.getPackage().clearAnnotations();
+                }
+                old.clear();
+            }
+        }
+        try {
+            final ClassFileParser classParser = new ClassFileParser();
+            for (final File file : changed) {
+                classParser.parse(file, this);
+            }
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem updating a Model", e);
+        }
+        removeUnused(candidates);
+        for (final CodePackage pack : packs) {
+            pack.removeUnusedEfferents();
+        }
+        return this;
+    }
+
+    /**
+     * Count the code, comment and empty lines of the classes of this model.
+     * A source file belongs to the classes with the same package and SourceFile attribute,
+     * all classes compiled from one file (e.g. inner classes) get the numbers of the whole file.
+     * Files that don't belong to a class of this model are not read.
+     *
+     * @param sources     the source files, e.g. from {@link guru.nidi.codeassert.config.AnalyzerConfig#getSources}.
+     * @param charset     the encoding of the source files.
+     * @param parallelism the number of threads to use.
+     * @return this model.
+     */
+    public Model parseSources(List<File> sources, Charset charset, int parallelism) {
+        checkNotFrozen();
+        final long start = System.nanoTime();
+        final Map<String, List<CodeClass>> bySource = classesBySource();
+        final List<File> files = new ArrayList<>();
+        final List<List<CodeClass>> classes = new ArrayList<>();
+        for (final File source : sources) {
+            final List<CodeClass> compiled = compiledFrom(source, bySource);
+            if (compiled != null) {
+                files.add(source);
+                classes.add(compiled);
+            }
+        }
+        final SourceFileParser[] results = new SourceFileParser[files.size()];
+        final SourceTask task = new SourceTask(files, charset, results);
+        if (parallelism <= 1) {
+            task.countAll();
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                for (final CodeClass clazz : classes.get(i)) {
+                    results[i].applyTo(clazz);
+                }
+            }
+        }
+        final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        LOG.info("Parsed {} source files in {} ms, {} files/s", files.size(), millis, files.size() * 1000L / millis);
+        return this;
+    }
+
+    /**
+     * The parsed classes by the path of their source file, e.g. "org/example/Foo.java".
+     */
+    private Map<String, List<CodeClass>> classesBySource() {
+        final Map<String, List<CodeClass>> res = new HashMap<>();
+        for (final CodeClass clazz : classes.values()) {
+            if (clazz.isParsed()) {
+                final String pack = clazz.getPackage().getName();
+                final String path = UNNAMED_PACKAGE.equals(pack)
+                        ? clazz.getSourceFile()
+                        : pack.replace('.', '/') + "/" + clazz.getSourceFile();
+                List<CodeClass> list = res.get(path);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    res.put(path, list);
+                }
+                list.add(clazz);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Find the classes of a source file, preferring the longest matching path.
+     */
+    private static List<CodeClass> compiledFrom(File source, Map<String, List<CodeClass>> bySource) {
+        final String path = source.getPath().replace(File.separatorChar, '/');
+        int pos = -1;
+        do {
+            final List<CodeClass> classes = bySource.get(path.substring(pos + 1));
+            if (classes != null) {
+                return classes;
+            }
+            pos = path.indexOf('/', pos + 1);
+        } while (pos >= 0);
+        return null;
+    }
+
+    private Map<File, CodeClass> classFiles() {
+        final Map<File, CodeClass> res = new HashMap<>();
+        for (final CodeClass clazz : classes.values()) {
+            if (clazz.classFile != null) {
+                res.put(clazz.classFile, clazz);
+            }
+        }
+        return res;
+    }
+
+    private void removeUnused(Collection<CodeClass> candidates) {
+        final Set<CodeClass> unused = new HashSet<>();
+        for (final CodeClass candidate : candidates) {
+            if (!candidate.isParsed()) {
+                unused.add(candidate);
+            }
+        }
+        for (final CodeClass clazz : classes.values()) {
+            if (unused.isEmpty()) {
+                break;
+            }
+            if (clazz.usedClasses().size() < unused.size()) {
+                unused.removeAll(clazz.usedClasses());
+            } else {
+                final Iterator<CodeClass> it = unused.iterator();
+                while (it.hasNext()) {
+                    if (clazz.usedClasses().contains(it.next())) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        for (final CodeClass clazz : unused) {
+            final CodePackage pack = clazz.getPackage();
+            classes.remove(clazz.getName());
+            pack.removeClass(clazz);
+            if (pack.getClasses().isEmpty()) {
+                packages.remove(pack.getName());
+            }
+        }
+    }
+
+    private void add(ClassFileParser parser, File archive) throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (final ZipEntry entry : entries(zip)) {
+                if (isClass(entry.getName())) {
+                    parser.parse(zip, entry, this);
+                } else {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        add(parser, entry.getName(), in);
+                    }
+                }
+            }
+        }
+    }
+
     private void add(ClassFileParser parser, String name, InputStream in) throws IOException {
-        if (name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".war") || name.endsWith(".ear")) {
+        if (isArchive(name)) {
             final JarInputStream jar = new JarInputStream(in);
             ZipEntry entry;
             while ((entry = jar.getNextEntry()) != null) {
@@ -69,11 +546,57 @@ public class Model {
                     jar.closeEntry();
                 }
             }
-        } else if (name.endsWith(".class")) {
+        } else if (isClass(name)) {
             parser.parse(in, this);
         }
     }
 
+    /**
+     * The entries of an archive that contain classes, selected by name so nothing else has to be inflated.
+     */
+    static List<ZipEntry> entries(ZipFile zip) {
+        final List<ZipEntry> res = new ArrayList<>();
+        final Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && (isClass(entry.getName()) || isArchive(entry.getName()))) {
+                res.add(entry);
+            }
+        }
+        return res;
+    }
+
+    static boolean isClass(String name) {
+        return name.endsWith(".class");
+    }
+
+    static boolean isArchive(String name) {
+        return name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".war") || name.endsWith(".ear");
+    }
+
+    /**
+     * Add all elements of another model to this model.
+     * If models are merged in the same order as their files would have been parsed,
+     * the result is the same as parsing all the files into one model.
+     *
+     * @param model  the model to be merged into this model.
+     * @param parsed the classes of the other model that have been parsed (and not only referenced).
+     */
+    void merge(Model model, Collection<CodeClass> parsed) {
+        for (final CodePackage pack : model.packages.values()) {
+            final CodePackage p = getOrCreatePackage(pack.getName());
+            for (final CodePackage use : pack.uses()) {
+                p.addEfferent(getOrCreatePackage(use.getName()));
+            }
+            for (final CodeClass annotation : pack.getAnnotations()) {
+                p.addAnnotation(getOrCreateClass(annotation.getName()));
+            }
+        }
+        for (final CodeClass clazz : model.classes.values()) {
+            getOrCreateClass(clazz.getName()).merge(clazz, this, parsed.contains(clazz));
+        }
+    }
+
     CodePackage getOrCreatePackage(String name) {
         CodePackage pack = packages.get(name);
         if (pack == null) {
@@ -99,6 +622,20 @@ public class Model {
         return pos < 0 ? UNNAMED_PACKAGE : type.substring(0, pos);
     }
 
+    /**
+     * @return an immutable snapshot of the dependencies between the packages of this model.
+     */
+    public Graph<CodePackage> packageGraph() {
+        return Graph.ofPackages(packages.values());
+    }
+
+    /**
+     * @return an immutable snapshot of the dependencies between the classes of this model.
+     */
+    public Graph<CodeClass> classGraph() {
+        return Graph.ofClasses(classes.values());
+    }
+
     public Collection<CodePackage> getPackages() {
         return packages.values();
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.AnalyzerException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Builds a model from class files as they are produced, e.g. by a compiler writing to memory.
+ * Each class file is parsed when it is accepted, so its content need not be kept.
+ * Classes can also be {@link #declare declared} with dependencies known from another source,
+ * e.g. the syntax trees of a compiler.
+ * A builder is not thread safe.
+ */
+public final class ModelBuilder implements Consumer<ByteBuffer> {
+    private final Model model;
+    private final ClassFileParser parser = new ClassFileParser();
+
+    public ModelBuilder() {
+        this(new Model());
+    }
+
+    /**
+     * @param model the model to add the classes to, its settings like {@link Model#including} are respected.
+     */
+    public ModelBuilder(Model model) {
+        this.model = model;
+    }
+
+    /**
+     * Parse a class file into the model.
+     *
+     * @param data the content of the class file, it is read from its position to its limit and not modified.
+     */
+    @Override
+    public void accept(ByteBuffer data) {
+        try {
+            parser.parse(data, model);
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem parsing a class", e);
+        }
+    }
+
+    public void accept(byte[] data) {
+        accept(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Add a class that is not read from a class file.
+     * It has no fields, methods and sizes, only its dependencies are added with the returned declaration.
+     *
+     * @param className  the binary name of the class, e.g. {@code a.Outer$Inner}.
+     * @param sourceFile the name of the source file without directory, like the SourceFile attribute of a class file.
+     * @param concrete   if the class is neither abstract nor an interface.
+     * @return the declaration of the class or null if the model does not include the class.
+     */
+    public Declaration declare(String className, String sourceFile, boolean concrete) {
+        if (!model.isIncluded(className)) {
+            return null;
+        }
+        final CodeClass clazz = model.getOrCreateClass(className);
+        clazz.sourceFile = sourceFile;
+        clazz.concrete = concrete;
+        clazz.parsed = true;
+        return new Declaration(clazz, model);
+    }
+
+    public Model build() {
+        return model;
+    }
+
+    /**
+     * The dependencies of a declared class.
+     * Each call counts as one usage, like each reference in a class file.
+     */
+    public static final class Declaration {
+        private final CodeClass clazz;
+        private final Model model;
+
+        private Declaration(CodeClass clazz, Model model) {
+            this.clazz = clazz;
+            this.model = model;
+        }
+
+        /**
+         * @param className the binary name of the used class.
+         * @return this declaration.
+         */
+        public Declaration uses(String className) {
+            clazz.addImport(className, model);
+            return this;
+        }
+
+        /**
+         * The annotations of a package-info class are also the annotations of its package.
+         *
+         * @param className the binary name of the annotation, it is also used.
+         * @return this declaration.
+         */
+        public Declaration annotatedWith(String className) {
+            clazz.addAnnotation(className, model);
+            if (clazz.getName().endsWith(".package-info")) {
+                clazz.getPackage().addAnnotation(model.getOrCreateClass(className));
+            }
+            return this;
+        }
+    }
+}
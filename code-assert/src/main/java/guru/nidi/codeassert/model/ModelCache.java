@@ -0,0 +1,433 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps the parsed content of class files and archives in a directory.
+ * An entry is used as long as its file has the same path, size and modification time
+ * and the model includes the same classes.
+ * If only the modification time differs (e.g. after a fresh checkout), the content hash decides.
+ * <p>
+ * An entry consists of a header, a table of all names and the packages and classes of the file,
+ * numbers are written with a variable length.
+ */
+final class ModelCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelCache.class);
+    private static final int MAGIC = 0xCA5ECA5E;
+    private static final int VERSION = 4;
+    private static final String HASH = "SHA-1";
+    private static final int HASH_LENGTH = 20;
+    private static final String SUFFIX = ".model";
+
+    private final File directory;
+
+    ModelCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cached content of the file or null if there is no valid entry.
+     */
+    ModelTask.Part load(File file, Model owner) {
+        final File entry = entryOf(file);
+        if (!entry.exists()) {
+            return null;
+        }
+        final byte[] hash = new byte[HASH_LENGTH];
+        final boolean touched;
+        final ModelTask.Part part;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(file.getAbsolutePath())
+                    || !in.readUTF().equals(owner.filter())) {
+                return null;
+            }
+            final long size = in.readLong();
+            final long modified = in.readLong();
+            in.readFully(hash);
+            if (size != file.length()) {
+                return null;
+            }
+            touched = modified != file.lastModified();
+            if (touched && !Arrays.equals(hash, hash(file))) {
+                return null;
+            }
+            part = new Reader(in, owner).read();
+        } catch (IOException e) {
+            LOG.info("Ignoring invalid cache entry {}", entry, e);
+            return null;
+        }
+        if (touched) {
+            store(file, part, hash);
+        }
+        if (Model.isClass(file.getName())) {
+            for (final CodeClass clazz : part.parsed) {
+                clazz.classFile = file.getAbsoluteFile();
+            }
+        }
+        return part;
+    }
+
+    void store(File file, ModelTask.Part part) {
+        try {
+            store(file, part, hash(file));
+        } catch (IOException e) {
+            LOG.warn("Could not cache {}", file, e);
+        }
+    }
+
+    private void store(File file, ModelTask.Part part, byte[] hash) {
+        try {
+            Files.createDirectories(directory.toPath());
+            final File temp = File.createTempFile("entry", ".tmp", directory);
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(file.getAbsolutePath());
+                    out.writeUTF(part.model.filter());
+                    out.writeLong(file.length());
+                    out.writeLong(file.lastModified());
+                    out.write(hash);
+                    new Writer(part).write(out);
+                }
+                move(temp, entryOf(file));
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not cache {}", file, e);
+        }
+    }
+
+    /**
+     * Write a whole model in the format of an entry, but without information about the file it comes from.
+     */
+    static void save(Model model, File file) throws IOException {
+        final ModelTask.Part part = new ModelTask.Part(model);
+        for (final CodeClass clazz : model.classes.values()) {
+            if (clazz.isParsed()) {
+                part.parsed.add(clazz);
+            }
+        }
+        final File dir = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+        final File temp = File.createTempFile("model", ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(model.filter());
+                new Writer(part).write(out);
+            }
+            move(temp, file);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Read a model written by {@link #save(Model, File)}.
+     */
+    static Model load(File file) throws IOException {
+        final Model model = new Model();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a model file or written by another version: " + file);
+            }
+            in.readUTF();
+            final ModelTask.Part part = new Reader(in, model).read();
+            model.merge(part.model, part.parsed);
+        }
+        return model;
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File entryOf(File file) {
+        final byte[] path = file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        return new File(directory, hex(digest().digest(path)) + SUFFIX);
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        final MessageDigest digest = digest();
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] buf = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buf)) > 0) {
+                digest.update(buf, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(HASH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(HASH + " is always supported", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder s = new StringBuilder();
+        for (final byte b : bytes) {
+            s.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return s.toString();
+    }
+
+    private static final class Writer {
+        private final ModelTask.Part part;
+        private final Map<String, Integer> names = new LinkedHashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream body = new DataOutputStream(bytes);
+
+        Writer(ModelTask.Part part) {
+            this.part = part;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writePackages();
+            writeClasses();
+            writeNum(out, names.size());
+            for (final String name : names.keySet()) {
+                out.writeUTF(name);
+            }
+            bytes.writeTo(out);
+        }
+
+        private void writePackages() throws IOException {
+            writeNum(body, part.model.packages.size());
+            for (final CodePackage pack : part.model.packages.values()) {
+                writeName(pack.getName());
+                writeNames(pack.uses());
+                writeNames(pack.getAnnotations());
+            }
+        }
+
+        private void writeClasses() throws IOException {
+            writeNum(body, part.model.classes.size());
+            for (final CodeClass clazz : part.model.classes.values()) {
+                writeName(clazz.getName());
+                final boolean parsed = part.parsed.contains(clazz);
+                body.writeBoolean(parsed);
+                if (parsed) {
+                    writeName(clazz.sourceFile);
+                    writeNum(body, clazz.codeSize);
+                    writeNum(body, clazz.totalSize);
+                    body.writeBoolean(clazz.concrete);
+                    writeNum(body, clazz.codeLines);
+                    writeNum(body, clazz.commentLines);
+                    writeNum(body, clazz.emptyLines);
+                    writeNum(body, clazz.totalLines);
+                }
+                writeCounts(clazz.usedPackageCounts());
+                writeCounts(clazz.usedClassCounts());
+                writeNames(clazz.getAnnotations());
+                writeMembers(clazz.getFields());
+                writeMembers(clazz.getMethods());
+            }
+        }
+
+        private void writeMembers(List<MemberInfo> members) throws IOException {
+            writeNum(body, members.size());
+            for (final MemberInfo member : members) {
+                writeNum(body, member.getAccessFlags());
+                writeName(member.getName());
+                writeName(member.descriptor);
+                writeNum(body, member.codeSize);
+                writeUsedMembers(member.usedMembers);
+            }
+        }
+
+        private void writeUsedMembers(MemberRef[] refs) throws IOException {
+            if (refs == null) {
+                body.writeBoolean(false);
+                return;
+            }
+            body.writeBoolean(true);
+            writeNum(body, refs.length);
+            for (final MemberRef ref : refs) {
+                body.writeBoolean(ref.isMethod());
+                writeName(ref.getClassName());
+                writeName(ref.getName());
+                writeName(ref.getDescriptor());
+            }
+        }
+
+        private void writeCounts(Map<? extends UsingElement<?>, Integer> counts) throws IOException {
+            writeNum(body, counts.size());
+            for (final Map.Entry<? extends UsingElement<?>, Integer> entry : counts.entrySet()) {
+                writeName(entry.getKey().getName());
+                writeNum(body, entry.getValue());
+            }
+        }
+
+        private void writeNames(Collection<? extends UsingElement<?>> elems) throws IOException {
+            writeNum(body, elems.size());
+            for (final UsingElement<?> elem : elems) {
+                writeName(elem.getName());
+            }
+        }
+
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index == null) {
+                index = names.size();
+                names.put(name, index);
+            }
+            writeNum(body, index);
+        }
+
+        private static void writeNum(DataOutput out, int value) throws IOException {
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                out.writeByte(v & 0x7F | 0x80);
+                v >>>= 7;
+            }
+            out.writeByte(v);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final Symbols symbols;
+        private final ModelTask.Part part;
+        private String[] names;
+
+        Reader(DataInputStream in, Model owner) {
+            this.in = in;
+            symbols = owner.symbols;
+            part = new ModelTask.Part(owner.emptyCopy());
+        }
+
+        ModelTask.Part read() throws IOException {
+            names = new String[readNum()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            readPackages();
+            readClasses();
+            return part;
+        }
+
+        private void readPackages() throws IOException {
+            final Model model = part.model;
+            for (int p = readNum(); p > 0; p--) {
+                final CodePackage pack = model.getOrCreatePackage(readName());
+                for (int u = readNum(); u > 0; u--) {
+                    pack.addEfferent(model.getOrCreatePackage(readName()));
+                }
+                for (int a = readNum(); a > 0; a--) {
+                    pack.addAnnotation(model.getOrCreateClass(readName()));
+                }
+            }
+        }
+
+        private void readClasses() throws IOException {
+            final Model model = part.model;
+            for (int c = readNum(); c > 0; c--) {
+                final CodeClass clazz = model.getOrCreateClass(readName());
+                if (in.readBoolean()) {
+                    part.parsed.add(clazz);
+                    clazz.parsed = true;
+                    clazz.sourceFile = readName();
+                    clazz.codeSize = readNum();
+                    clazz.totalSize = readNum();
+                    clazz.concrete = in.readBoolean();
+                    clazz.codeLines = readNum();
+                    clazz.commentLines = readNum();
+                    clazz.emptyLines = readNum();
+                    clazz.totalLines = readNum();
+                }
+                for (int u = readNum(); u > 0; u--) {
+                    clazz.addUsedPackage(model.getOrCreatePackage(readName()), readNum());
+                }
+                for (int u = readNum(); u > 0; u--) {
+                    clazz.addUsedClass(model.getOrCreateClass(readName()), readNum());
+                }
+                for (int a = readNum(); a > 0; a--) {
+                    clazz.addAnnotation(model.getOrCreateClass(readName()));
+                }
+                clazz.addFields(readMembers());
+                clazz.addMethods(readMembers());
+            }
+        }
+
+        private List<MemberInfo> readMembers() throws IOException {
+            final int count = readNum();
+            final List<MemberInfo> members = new ArrayList<>(count);
+            for (int m = count; m > 0; m--) {
+                final int access = readNum();
+                final String name = symbols.intern(readName());
+                final String descriptor = symbols.intern(readName());
+                final int codeSize = readNum();
+                members.add(new MemberInfo(access, name, descriptor, codeSize, readUsedMembers()));
+            }
+            return members;
+        }
+
+        private MemberRef[] readUsedMembers() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            final MemberRef[] refs = new MemberRef[readNum()];
+            for (int r = 0; r < refs.length; r++) {
+                final boolean method = in.readBoolean();
+                refs[r] = new MemberRef(method,
+                        symbols.intern(readName()), symbols.intern(readName()), symbols.intern(readName()));
+            }
+            return refs;
+        }
+
+        private String readName() throws IOException {
+            final int index = readNum();
+            if (index >= names.length) {
+                throw new IOException("Illegal name index " + index);
+            }
+            return names[index];
+        }
+
+        private int readNum() throws IOException {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
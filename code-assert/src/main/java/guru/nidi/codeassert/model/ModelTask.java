@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.AnalyzerException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Parses a range of inputs into a partial model.
+ * Large ranges are split and the parts are merged in input order,
+ * so the result is the same as when parsing all inputs sequentially.
+ */
+@SuppressWarnings("serial")
+abstract class ModelTask<T> extends RecursiveTask<ModelTask.Part> {
+    private static final int THRESHOLD = 16;
+
+    final List<T> inputs;
+    final Model owner;
+    final boolean parallel;
+    private final int from;
+    private final int to;
+
+    ModelTask(List<T> inputs, Model owner, boolean parallel, int from, int to) {
+        this.inputs = inputs;
+        this.owner = owner;
+        this.parallel = parallel;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Part compute() {
+        if (to - from <= THRESHOLD) {
+            final Part part = new Part(owner.emptyCopy());
+            parseAll(part);
+            return part;
+        }
+        final int mid = (from + to) >>> 1;
+        final ModelTask<T> left = subTask(from, mid);
+        left.fork();
+        final Part right = subTask(mid, to).compute();
+        return left.join().merge(right);
+    }
+
+    /**
+     * Parse the whole range sequentially.
+     *
+     * @param part the part to add the parsed classes to.
+     */
+    void parseAll(Part part) {
+        final ClassFileParser parser = new ClassFileParser();
+        try {
+            for (int i = from; i < to; i++) {
+                parse(parser, inputs.get(i), part);
+            }
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem creating a Model", e);
+        }
+    }
+
+    /**
+     * Parse the whole range, in parallel if the parsing was started in parallel.
+     * This is decided by the caller and not by the current thread,
+     * as a sequential parse may well be called from a worker of some other fork join pool.
+     *
+     * @param part the part to add the parsed classes to.
+     */
+    void parseInto(Part part) {
+        if (parallel) {
+            part.merge(invoke());
+        } else {
+            parseAll(part);
+        }
+    }
+
+    abstract ModelTask<T> subTask(int from, int to);
+
+    abstract void parse(ClassFileParser parser, T input, Part part) throws IOException;
+
+    static final class Part {
+        final Model model;
+        final Set<CodeClass> parsed = new HashSet<>();
+
+        Part(Model model) {
+            this.model = model;
+        }
+
+        void add(CodeClass clazz) {
+            if (clazz != null) {
+                parsed.add(clazz);
+            }
+        }
+
+        Part merge(Part part) {
+            model.merge(part.model, part.parsed);
+            for (final CodeClass clazz : part.parsed) {
+                parsed.add(model.getOrCreateClass(clazz.getName()));
+            }
+            return this;
+        }
+    }
+
+    static class Files extends ModelTask<File> {
+        private final ModelCache cache;
+
+        Files(List<File> files, Model owner, ModelCache cache, boolean parallel) {
+            this(files, owner, cache, parallel, 0, files.size());
+        }
+
+        private Files(List<File> files, Model owner, ModelCache cache, boolean parallel, int from, int to) {
+            super(files, owner, parallel, from, to);
+            this.cache = cache;
+        }
+
+        @Override
+        ModelTask<File> subTask(int from, int to) {
+            return new Files(inputs, owner, cache, parallel, from, to);
+        }
+
+        @Override
+        void parse(ClassFileParser parser, File file, Part part) throws IOException {
+            if (cache == null) {
+                parseFile(parser, file, part);
+                return;
+            }
+            Part cached = cache.load(file, owner);
+            if (cached == null) {
+                cached = new Part(owner.emptyCopy());
+                parseFile(parser, file, cached);
+                cache.store(file, cached);
+            }
+            part.merge(cached);
+        }
+
+        private void parseFile(ClassFileParser parser, File file, Part part) throws IOException {
+            if (Model.isArchive(file.getName())) {
+                try (ZipFile zip = new ZipFile(file)) {
+                    new Entries(zip, Model.entries(zip), owner, parallel).parseInto(part);
+                }
+            } else if (Model.isClass(file.getName())) {
+                part.add(parser.parse(file, part.model));
+            }
+        }
+    }
+
+    /**
+     * The entries of an archive opened with random access.
+     * Each worker inflates its own entries, nested archives are read as streams.
+     */
+    static class Entries extends ModelTask<ZipEntry> {
+        private final ZipFile zip;
+
+        Entries(ZipFile zip, List<ZipEntry> entries, Model owner, boolean parallel) {
+            this(zip, entries, owner, parallel, 0, entries.size());
+        }
+
+        private Entries(ZipFile zip, List<ZipEntry> entries, Model owner, boolean parallel, int from, int to) {
+            super(entries, owner, parallel, from, to);
+            this.zip = zip;
+        }
+
+        @Override
+        ModelTask<ZipEntry> subTask(int from, int to) {
+            return new Entries(zip, inputs, owner, parallel, from, to);
+        }
+
+        @Override
+        void parse(ClassFileParser parser, ZipEntry entry, Part part) throws IOException {
+            if (Model.isClass(entry.getName())) {
+                part.add(parser.parse(zip, entry, part.model));
+            } else {
+                final List<ByteBuffer> classes = new ArrayList<>();
+                try (InputStream in = zip.getInputStream(entry)) {
+                    readClasses(entry.getName(), in, entry.getSize(), classes);
+                }
+                new Classes(classes, owner, parallel).parseInto(part);
+            }
+        }
+
+        private void readClasses(String name, InputStream in, long size, List<ByteBuffer> classes) throws IOException {
+            if (Model.isArchive(name)) {
+                final JarInputStream jar = new JarInputStream(in);
+                ZipEntry entry;
+                while ((entry = jar.getNextEntry()) != null) {
+                    try {
+                        if (!entry.isDirectory()) {
+                            readClasses(entry.getName(), jar, entry.getSize(), classes);
+                        }
+                    } finally {
+                        jar.closeEntry();
+                    }
+                }
+            } else if (Model.isClass(name)) {
+                classes.add(ByteBuffer.wrap(ClassFileParser.read(in, size)));
+            }
+        }
+    }
+
+    /**
+     * The contents of class files that are already in memory.
+     */
+    static class Classes extends ModelTask<ByteBuffer> {
+        Classes(List<ByteBuffer> classes, Model owner, boolean parallel) {
+            this(classes, owner, parallel, 0, classes.size());
+        }
+
+        private Classes(List<ByteBuffer> classes, Model owner, boolean parallel, int from, int to) {
+            super(classes, owner, parallel, from, to);
+        }
+
+        @Override
+        ModelTask<ByteBuffer> subTask(int from, int to) {
+            return new Classes(inputs, owner, parallel, from, to);
+        }
+
+        @Override
+        void parse(ClassFileParser parser, ByteBuffer data, Part part) throws IOException {
+            part.add(parser.parse(data, part.model));
+        }
+    }
+}
@@ -26,6 +26,7 @@ public abstract class Scope<T extends UsingElement<T>> implements Iterable<T> {
     public static final Classes CLASSES = new Classes(null);
 
     protected final Model model;
+    private Graph<T> graph;
 
     protected Scope(Model model) {
         this.model = model;
@@ -48,14 +49,24 @@ public abstract class Scope<T extends UsingElement<T>> implements Iterable<T> {
         }
     }
 
-    public List<T> matchingElements(LocationMatcher matcher) {
-        final List<T> res = new ArrayList<>();
-        for (final T elem : this) {
-            if (elem.isMatchedBy(matcher)) {
-                res.add(elem);
-            }
+    /**
+     * The dependency graph of the elements of this scope.
+     * It is created at the first call and does not reflect later changes of the model.
+     *
+     * @return the graph.
+     */
+    public Graph<T> graph() {
+        if (graph == null) {
+            graph = createGraph();
         }
-        return res;
+        return graph;
+    }
+
+    protected abstract Graph<T> createGraph();
+
+    public List<T> matchingElements(LocationMatcher matcher) {
+        final Graph<T> g = graph();
+        return g.elements(g.matching(matcher));
     }
 
     public static class Packages extends Scope<CodePackage> {
@@ -67,6 +78,11 @@ public abstract class Scope<T extends UsingElement<T>> implements Iterable<T> {
         public Iterator<CodePackage> iterator() {
             return model.packages.values().iterator();
         }
+
+        @Override
+        protected Graph<CodePackage> createGraph() {
+            return model.packageGraph();
+        }
     }
 
     public static class Classes extends Scope<CodeClass> {
@@ -78,6 +94,11 @@ public abstract class Scope<T extends UsingElement<T>> implements Iterable<T> {
         public Iterator<CodeClass> iterator() {
             return model.classes.values().iterator();
         }
+
+        @Override
+        protected Graph<CodeClass> createGraph() {
+            return model.classGraph();
+        }
     }
 
 }
@@ -17,11 +17,12 @@ package guru.nidi.codeassert.model;
 
 import guru.nidi.codeassert.AnalyzerException;
 
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Parse a java type signature.
  * see https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.3.4
+ * The names of the classes are collected in a reused buffer, only the resulting names are allocated.
  */
 final class SignatureParser {
     public enum Source {
@@ -35,7 +36,10 @@ final class SignatureParser {
     private final String s;
     private char c;
     private int pos;
-    private final Set<String> classes = new HashSet<>();
+    private char[] name = new char[64];
+    private int nameLen;
+    private String[] classes = TypeCache.NONE;
+    private int classCount;
 
     private SignatureParser(String s) {
         this.s = s;
@@ -43,7 +47,10 @@ final class SignatureParser {
         read();
     }
 
-    public static SignatureParser parseSignature(Source source, String signature) {
+    /**
+     * @return the distinct classes referenced by the signature, with '.' as separator.
+     */
+    public static String[] parseSignature(Source source, String signature) {
         final SignatureParser parser = new SignatureParser(signature);
         switch (source) {
             case CLASS:
@@ -58,11 +65,23 @@ final class SignatureParser {
             default:
                 //nothing
         }
-        return parser;
+        return parser.classes();
     }
 
-    public Collection<String> getClasses() {
-        return classes;
+    private String[] classes() {
+        return classCount == classes.length ? classes : Arrays.copyOf(classes, classCount);
+    }
+
+    private void addClass(String clazz) {
+        for (int i = 0; i < classCount; i++) {
+            if (classes[i].equals(clazz)) {
+                return;
+            }
+        }
+        if (classCount == classes.length) {
+            classes = Arrays.copyOf(classes, Math.max(4, 2 * classCount));
+        }
+        classes[classCount++] = clazz;
     }
 
     private void classSignature() {
@@ -83,7 +102,7 @@ final class SignatureParser {
     }
 
     private void formalTypeParameter() {
-        identifier();
+        identifier(false, false);
         classBound();
         while (is(':')) {
             interfaceBound();
@@ -112,32 +131,32 @@ final class SignatureParser {
 
     private void classTypeSignature() {
         read('L');
-        final StringBuilder s = new StringBuilder();
-        s.append(classIdentifier());
-        while (!is(';') && !is('<')) {
+        nameLen = 0;
+        identifier(true, true);
+        while (!is(';') && !is('<') && !is(EOF)) {
             if (is('$')) {
                 read();
-                classIdentifier();
+                identifier(true, false);
             } else {
-                s.append('.');
+                append('.');
                 read();
-                s.append(classIdentifier());
+                identifier(true, true);
             }
         }
-        final String id = s.toString();
+        final String id = new String(name, 0, nameLen);
         if (is('<')) {
             typeArguments();
         }
         while (is('.')) {
             classTypeSignatureSuffix();
         }
-        classes.add(id);
+        addClass(id);
         read(';');
     }
 
     private void classTypeSignatureSuffix() {
         read('.');
-        classIdentifier();
+        identifier(true, false);
         if (is('<')) {
             typeArguments();
         }
@@ -183,7 +202,7 @@ final class SignatureParser {
 
     private void typeVariableSignature() {
         read('T');
-        identifier();
+        identifier(false, false);
         read(';');
     }
 
@@ -229,35 +248,38 @@ final class SignatureParser {
         }
     }
 
-    private String classIdentifier() {
-        return identifier(true);
-    }
-
-    private String identifier() {
-        return identifier(false);
-    }
-
-    private String identifier(boolean clazz) {
-        final StringBuilder s = new StringBuilder();
+    /**
+     * @param clazz if '$' ends the identifier.
+     * @param keep  if the identifier should be appended to the current class name.
+     */
+    private void identifier(boolean clazz, boolean keep) {
         do {
-            s.append(c);
+            if (keep) {
+                append(c);
+            }
             read();
-        } while (NOT_IDENT.indexOf(c) < 0 && (!clazz || c != '$'));
-        return s.toString();
+        } while (c != EOF && NOT_IDENT.indexOf(c) < 0 && (!clazz || c != '$'));
+    }
+
+    private void append(char ch) {
+        if (nameLen == name.length) {
+            name = Arrays.copyOf(name, 2 * nameLen);
+        }
+        name[nameLen++] = ch;
     }
 
     private boolean is(char ch) {
         return c == ch;
     }
 
-    private char read() {
-        return c = (pos == s.length() ? EOF : s.charAt(pos++));
+    private void read() {
+        c = pos == s.length() ? EOF : s.charAt(pos++);
     }
 
-    private char read(char ch) {
+    private void read(char ch) {
         if (c != ch) {
             throw new AnalyzerException("'" + ch + "' expected in '" + s + "':" + pos);
         }
-        return read();
+        read();
     }
 }
@@ -16,185 +16,338 @@
 package guru.nidi.codeassert.model;
 
 import guru.nidi.codeassert.config.Language;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
 
-import static guru.nidi.codeassert.model.SourceFileParser.State.*;
-
-abstract class SourceFileParser {
+/**
+ * Counts the code, comment and empty lines of a source file in a single pass over its characters.
+ * A line is a comment line if it contains (a part of) a comment,
+ * it is a code line if it contains something else than whitespace and comments or if it contains no comment at all.
+ * Empty lines contain only whitespace, they are also code or comment lines.
+ */
+final class SourceFileParser {
     private static final Logger LOG = LoggerFactory.getLogger(SourceFileParser.class);
-    static final String SLASH_SLASH = "//";
-    static final String QUOTE = "\"";
-    static final String TRIPLE_QUOTE = "\"\"\"";
-    static final String SLASH_STAR = "/*";
-    static final String STAR_SLASH = "*/";
 
-    enum State {
-        CODE, STRING, LINE_STRING, COMMENT, LINE_COMMENT
+    private static final int
+            CODE = 0,
+            LINE_COMMENT = 1,
+            COMMENT = 2,
+            STRING = 3,
+            MULTILINE_STRING = 4;
+
+    /**
+     * The characters that can change the state, all others are just counted as code or comment.
+     */
+    private static final boolean[] SPECIAL = new boolean[128];
+
+    static {
+        for (final char c : "\n\r/*\"'\\".toCharArray()) {
+            SPECIAL[c] = true;
+        }
     }
 
-    State state;
-    String line;
-    int pos;
-    String token;
+    private final boolean nestedComments;
+    private final boolean multilineStrings;
+    private final boolean textBlocks;
+    private final boolean singleQuoteStrings;
+
+    private char[] chars;
+    private int end;
+    private int state;
+    private boolean inCode;
+    private int nesting;
+    private char quote;
+    private boolean comment;
+    private boolean code;
+    private boolean empty;
     int codeLines;
     int commentLines;
     int emptyLines;
     int totalLines;
 
+    /**
+     * @param nestedComments     if block comments can be nested (kotlin, scala).
+     * @param multilineStrings   if triple quotes start a raw string (kotlin, scala) or a string with escapes (groovy).
+     * @param textBlocks         if triple quotes followed by a line end start a text block (java).
+     * @param singleQuoteStrings if single quotes enclose strings (groovy) or characters (all others).
+     */
+    private SourceFileParser(boolean nestedComments, boolean multilineStrings, boolean textBlocks,
+                             boolean singleQuoteStrings) {
+        this.nestedComments = nestedComments;
+        this.multilineStrings = multilineStrings;
+        this.textBlocks = textBlocks;
+        this.singleQuoteStrings = singleQuoteStrings;
+    }
+
     static CodeClass parse(CodeClass clazz, File file, Charset charset) throws IOException {
-        try (InputStream in = new FileInputStream(file)) {
-            final Language language = Language.byFilename(file.getName());
-            if (language == null) {
-                LOG.info("Unknown source file type {}. Ignoring it", file);
-            } else {
-                parse(clazz, language, in, charset);
-            }
+        final Language language = Language.byFilename(file.getName());
+        if (language == null) {
+            LOG.info("Unknown source file type {}. Ignoring it", file);
             return clazz;
         }
+        return count(file, language, charset).applyTo(clazz);
     }
 
     static CodeClass parse(CodeClass clazz, Language language, InputStream is, Charset charset) throws IOException {
-        try (Reader in = new InputStreamReader(is, charset)) {
-            return parse(clazz, language, in);
+        try (InputStream in = is) {
+            return parse(clazz, language, charset.decode(ByteBuffer.wrap(IOUtils.toByteArray(in))));
         }
     }
 
     static CodeClass parse(CodeClass clazz, Language language, Reader reader) throws IOException {
-        try (BufferedReader in = new BufferedReader(reader)) {
-            final SourceFileParser parser = parser(language);
-            if (parser == null) {
-                LOG.info("No parser for language {}. Ignoring it", language);
-            } else {
-                parser.parse(in);
-                new CodeClassBuilder(clazz)
-                        .addSourceSizes(parser.codeLines, parser.commentLines, parser.emptyLines, parser.totalLines);
-            }
-            return clazz;
+        try (Reader in = reader) {
+            char[] buf = new char[8 * 1024];
+            int len = 0;
+            int read;
+            do {
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * len);
+                }
+                read = in.read(buf, len, buf.length - len);
+                len += Math.max(read, 0);
+            } while (read >= 0);
+            return parse(clazz, language, CharBuffer.wrap(buf, 0, len));
         }
     }
 
+    private static CodeClass parse(CodeClass clazz, Language language, CharBuffer source) {
+        return count(language, source).applyTo(clazz);
+    }
+
+    /**
+     * @return the parser containing the numbers of lines of the file.
+     */
+    static SourceFileParser count(File file, Language language, Charset charset) throws IOException {
+        return count(language, charset.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath()))));
+    }
+
+    private static SourceFileParser count(Language language, CharBuffer source) {
+        final SourceFileParser parser = parser(language);
+        final int offset = source.arrayOffset();
+        parser.countLines(source.array(), offset + source.position(), offset + source.limit());
+        return parser;
+    }
+
+    CodeClass applyTo(CodeClass clazz) {
+        new CodeClassBuilder(clazz).addSourceSizes(codeLines, commentLines, emptyLines, totalLines);
+        return clazz;
+    }
+
     private static SourceFileParser parser(Language language) {
         switch (language) {
-            case JAVA:
-                return new JavaParser();
             case KOTLIN:
-                return new KotlinParser();
+            case SCALA:
+                return new SourceFileParser(true, true, false, false);
+            case GROOVY:
+                return new SourceFileParser(false, true, false, true);
             default:
-                return null;
+                return new SourceFileParser(false, false, true, false);
         }
     }
 
-    void parse(BufferedReader in) throws IOException {
-        state = CODE;
-        while ((line = in.readLine()) != null) {
-            pos = 0;
-            totalLines++;
-            if (line.trim().length() == 0) {
-                emptyLines++;
-            }
-            parseLine();
-            if (state == LINE_COMMENT || state == LINE_STRING) {
-                state = CODE;
+    void countLines(char[] source, int start, int end) {
+        chars = source;
+        this.end = end;
+        state(CODE);
+        startLine();
+        int pos = start;
+        int lineStart = start;
+        while (pos < end) {
+            final char c = chars[pos];
+            if (!isSpecial(c)) {
+                pos = plain(pos);
+            } else if (c == '\n' || c == '\r') {
+                endLine();
+                pos += c == '\r' && at(pos + 1, '\n') ? 2 : 1;
+                lineStart = pos;
+            } else {
+                empty = false;
+                pos = special(c, pos);
             }
         }
+        if (pos > lineStart) {
+            endLine();
+        }
+    }
+
+    private static boolean isSpecial(char c) {
+        return c < SPECIAL.length && SPECIAL[c];
     }
 
-    void parseLine() {
-        boolean comment = state == COMMENT;
-        boolean code = false;
+    /**
+     * Skip a run of characters that don't change the state.
+     *
+     * @return the position of the next special character.
+     */
+    private int plain(int pos) {
+        final char[] cs = chars;
+        final int e = end;
+        boolean blank = true;
+        int p = pos;
         do {
-            doParse();
-            code |= (!comment && pos > 2)
-                    || (state != COMMENT && state != LINE_COMMENT && (!comment || pos < line.length()));
-            comment |= state == COMMENT || state == LINE_COMMENT;
-        } while (pos > 0 && pos < line.length());
-        if (comment) {
-            commentLines++;
+            blank &= cs[p] <= ' ';
+            p++;
+        } while (p < e && !isSpecial(cs[p]));
+        if (!blank) {
+            empty = false;
+            code |= inCode;
         }
-        if (code) {
-            codeLines++;
+        return p;
+    }
+
+    /**
+     * Process a character that could change the state.
+     *
+     * @return the position of the next character to process.
+     */
+    private int special(char c, int pos) {
+        switch (state) {
+            case CODE:
+                return code(c, pos);
+            case COMMENT:
+                if (c == '*' && at(pos + 1, '/')) {
+                    nesting--;
+                    if (nesting == 0) {
+                        state(CODE);
+                    }
+                    return pos + 2;
+                }
+                if (nestedComments && c == '/' && at(pos + 1, '*')) {
+                    nesting++;
+                    return pos + 2;
+                }
+                return pos + 1;
+            case STRING:
+                code = true;
+                if (c == '\\') {
+                    return escaped(pos);
+                }
+                if (c == quote) {
+                    state(CODE);
+                }
+                return pos + 1;
+            case MULTILINE_STRING:
+                code = true;
+                if (c == '\\' && (textBlocks || singleQuoteStrings)) {
+                    return escaped(pos);
+                }
+                if (c == quote && at(pos + 1, quote) && at(pos + 2, quote)) {
+                    int p = pos + 3;
+                    while (at(p, quote)) {
+                        p++;
+                    }
+                    state(CODE);
+                    return p;
+                }
+                return pos + 1;
+            default:
+                return pos + 1;
         }
     }
 
-    protected boolean findToken(String... tokens) {
-        int tp = -1;
-        for (final String tok : tokens) {
-            final int index = line.indexOf(tok, pos);
-            if (index >= 0 && (tp < 0 || index < tp)) {
-                token = tok;
-                tp = index;
+    private int code(char c, int pos) {
+        if (c == '/' && at(pos + 1, '/')) {
+            state(LINE_COMMENT);
+            comment = true;
+            return pos + 2;
+        }
+        if (c == '/' && at(pos + 1, '*')) {
+            state(COMMENT);
+            nesting = 1;
+            comment = true;
+            return pos + 2;
+        }
+        code = true;
+        if (c == '"' || (c == '\'' && singleQuoteStrings)) {
+            quote = c;
+            if (isMultilineStringStart(c, pos)) {
+                state(MULTILINE_STRING);
+                return pos + 3;
             }
+            state(STRING);
+            return pos + 1;
         }
-        if (tp < 0) {
-            pos = -1;
-            return false;
+        if (c == '\'') {
+            return character(pos);
         }
-        pos = tp + token.length();
-        return true;
+        return pos + 1;
     }
 
-    protected abstract void doParse();
+    private void state(int state) {
+        this.state = state;
+        inCode = state != COMMENT && state != LINE_COMMENT;
+    }
 
-    static class JavaParser extends SourceFileParser {
-        public void doParse() {
-            if (findToken(SLASH_SLASH, SLASH_STAR, STAR_SLASH, QUOTE)) {
-                if (state == COMMENT || state == LINE_COMMENT) {
-                    if (token.equals(STAR_SLASH)) {
-                        state = CODE;
-                    }
-                } else if (state == LINE_STRING) {
-                    if (token.equals(QUOTE) && (pos == 0 || line.charAt(pos - 2) != '\\')) {
-                        state = CODE;
-                    }
-                } else if (token.equals(QUOTE)) {
-                    state = LINE_STRING;
-                } else if (token.equals(SLASH_STAR)) {
-                    state = COMMENT;
-                } else if (token.equals(SLASH_SLASH)) {
-                    state = LINE_COMMENT;
+    private boolean isMultilineStringStart(char c, int pos) {
+        if (!at(pos + 1, c) || !at(pos + 2, c)) {
+            return false;
+        }
+        if (multilineStrings) {
+            return true;
+        }
+        if (!textBlocks || c != '"') {
+            return false;
+        }
+        int p = pos + 3;
+        while (p < end && chars[p] <= ' ' && chars[p] != '\n' && chars[p] != '\r') {
+            p++;
+        }
+        return p == end || chars[p] == '\n' || chars[p] == '\r';
+    }
+
+    /**
+     * A character literal like 'a' or '\''.
+     * Anything else (e.g. a scala symbol) is just code.
+     */
+    private int character(int pos) {
+        if (at(pos + 1, '\\')) {
+            for (int p = pos + 3; p < end && chars[p] != '\n' && chars[p] != '\r'; p++) {
+                if (chars[p] == '\'') {
+                    return p + 1;
                 }
             }
+        } else if (at(pos + 2, '\'') && !at(pos + 1, '\n') && !at(pos + 1, '\r')) {
+            return pos + 3;
         }
+        return pos + 1;
     }
 
-    static class KotlinParser extends SourceFileParser {
-        private int nesting;
+    private int escaped(int pos) {
+        return at(pos + 1, '\n') || at(pos + 1, '\r') ? pos + 1 : pos + 2;
+    }
 
-        public void doParse() {
-            if (findToken(SLASH_SLASH, SLASH_STAR, STAR_SLASH, TRIPLE_QUOTE, QUOTE)) {
-                if (state == COMMENT || state == LINE_COMMENT) {
-                    if (token.equals(STAR_SLASH)) {
-                        nesting--;
-                        if (nesting == 0) {
-                            state = CODE;
-                        }
-                    } else if (token.equals(SLASH_STAR)) {
-                        state = COMMENT;
-                        nesting++;
-                    }
-                } else if (state == STRING) {
-                    if (token.equals(TRIPLE_QUOTE)) {
-                        state = CODE;
-                    }
-                } else if (token.equals(TRIPLE_QUOTE)) {
-                    state = STRING;
-                } else if (state == LINE_STRING) {
-                    if (token.equals(QUOTE) && (pos == 0 || line.charAt(pos - 2) != '\\')) {
-                        state = CODE;
-                    }
-                } else if (token.equals(QUOTE)) {
-                    state = LINE_STRING;
-                } else if (token.equals(SLASH_STAR)) {
-                    state = COMMENT;
-                    nesting++;
-                } else if (token.equals(SLASH_SLASH)) {
-                    state = LINE_COMMENT;
-                }
-            }
+    private boolean at(int pos, char c) {
+        return pos < end && chars[pos] == c;
+    }
+
+    private void startLine() {
+        comment = state == COMMENT;
+        code = false;
+        empty = true;
+    }
+
+    private void endLine() {
+        totalLines++;
+        if (empty) {
+            emptyLines++;
+        }
+        if (comment) {
+            commentLines++;
+        }
+        if (code || !comment) {
+            codeLines++;
+        }
+        if (state == LINE_COMMENT || state == STRING) {
+            state(CODE);
         }
+        startLine();
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.AnalyzerException;
+import guru.nidi.codeassert.config.Language;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Counts the lines of a range of source files.
+ * The result for each file is stored at its index, so no merging is needed.
+ */
+@SuppressWarnings("serial")
+class SourceTask extends RecursiveAction {
+    private static final int THRESHOLD = 16;
+
+    private final List<File> files;
+    private final Charset charset;
+    private final SourceFileParser[] results;
+    private final int from;
+    private final int to;
+
+    SourceTask(List<File> files, Charset charset, SourceFileParser[] results) {
+        this(files, charset, results, 0, files.size());
+    }
+
+    private SourceTask(List<File> files, Charset charset, SourceFileParser[] results, int from, int to) {
+        this.files = files;
+        this.charset = charset;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            countAll();
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        invokeAll(new SourceTask(files, charset, results, from, mid),
+                new SourceTask(files, charset, results, mid, to));
+    }
+
+    void countAll() {
+        try {
+            for (int i = from; i < to; i++) {
+                final File file = files.get(i);
+                final Language language = Language.byFilename(file.getName());
+                if (language != null) {
+                    results[i] = SourceFileParser.count(file, language, charset);
+                }
+            }
+        } catch (IOException e) {
+            throw new AnalyzerException("Problem reading source files", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The canonical instances of the names kept in a model.
+ * Member names and descriptors repeat across many class files, with this table they are stored only once.
+ * The table is shared by the partial models of a concurrent build.
+ */
+final class Symbols {
+    private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<>();
+
+    String intern(String name) {
+        final String symbol = symbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        final String previous = symbols.putIfAbsent(name, name);
+        return previous == null ? name : previous;
+    }
+
+    int size() {
+        return symbols.size();
+    }
+}
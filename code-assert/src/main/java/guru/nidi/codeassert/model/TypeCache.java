@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The class names referenced by descriptors and signatures.
+ * The same descriptors occur in many class files, with this cache each of them is parsed only once.
+ * The cache is shared by the partial models of a concurrent build, it is cleared when it gets too big.
+ */
+final class TypeCache {
+    static final String[] NONE = new String[0];
+    private static final int MAX_SIZE = 64 * 1024;
+
+    private final ConcurrentMap<String, String[]> descriptors = new ConcurrentHashMap<>();
+    private final Map<SignatureParser.Source, ConcurrentMap<String, String[]>> signatures =
+            new EnumMap<>(SignatureParser.Source.class);
+
+    TypeCache() {
+        for (final SignatureParser.Source source : SignatureParser.Source.values()) {
+            signatures.put(source, new ConcurrentHashMap<String, String[]>());
+        }
+    }
+
+    /**
+     * @param descriptor a field or method descriptor or an array class name, with '/' or '.' as separator.
+     * @return the referenced classes, in order of appearance and with duplicates, with '.' as separator.
+     */
+    String[] descriptorTypes(String descriptor) {
+        String[] types = descriptors.get(descriptor);
+        if (types == null) {
+            types = parseDescriptor(descriptor);
+            put(descriptors, descriptor, types);
+        }
+        return types;
+    }
+
+    /**
+     * @return the distinct classes referenced by the signature, with '.' as separator.
+     */
+    String[] signatureTypes(SignatureParser.Source source, String signature) {
+        final ConcurrentMap<String, String[]> cache = signatures.get(source);
+        String[] types = cache.get(signature);
+        if (types == null) {
+            types = SignatureParser.parseSignature(source, signature);
+            put(cache, signature, types);
+        }
+        return types;
+    }
+
+    private static void put(ConcurrentMap<String, String[]> cache, String key, String[] types) {
+        if (cache.size() >= MAX_SIZE) {
+            cache.clear();
+        }
+        cache.put(key, types);
+    }
+
+    static String[] parseDescriptor(String descriptor) {
+        String[] types = NONE;
+        int count = 0;
+        for (int i = 0; i < descriptor.length(); i++) {
+            if (descriptor.charAt(i) == 'L') {
+                final int end = descriptor.indexOf(';', i + 1);
+                if (end < 0) {
+                    break;
+                }
+                if (count == types.length) {
+                    types = Arrays.copyOf(types, Math.max(4, 2 * count));
+                }
+                types[count++] = dotted(descriptor, i + 1, end);
+                i = end;
+            }
+        }
+        return count == types.length ? types : Arrays.copyOf(types, count);
+    }
+
+    private static String dotted(String s, int from, int to) {
+        final char[] chars = new char[to - from];
+        s.getChars(from, to, chars, 0);
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '/') {
+                chars[i] = '.';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.util;
+
+import java.util.*;
+
+/**
+ * An immutable map from elements to their count, backed by an {@link ArraySet} and an array of counts.
+ * It is safe to share between threads.
+ *
+ * @param <T> the type of the elements.
+ */
+public final class ArrayCountMap<T> extends AbstractMap<T, Integer> {
+    private final ArraySet<T> keys;
+    private final int[] counts;
+
+    public ArrayCountMap(Map<? extends T, Integer> map) {
+        keys = ArraySet.of(map.keySet());
+        counts = new int[keys.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = map.get(keys.get(i));
+        }
+    }
+
+    @Override
+    public Integer get(Object key) {
+        final int index = keys.indexOf(key);
+        return index < 0 ? null : counts[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return counts.length;
+    }
+
+    @Override
+    public Set<T> keySet() {
+        return keys;
+    }
+
+    @Override
+    public Set<Entry<T, Integer>> entrySet() {
+        return new AbstractSet<Entry<T, Integer>>() {
+            @Override
+            public int size() {
+                return counts.length;
+            }
+
+            @Override
+            public Iterator<Entry<T, Integer>> iterator() {
+                return new Iterator<Entry<T, Integer>>() {
+                    private int pos;
+
+                    @Override
+                    public boolean hasNext() {
+                        return pos < counts.length;
+                    }
+
+                    @Override
+                    public Entry<T, Integer> next() {
+                        if (pos == counts.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final int index = pos++;
+                        return new SimpleImmutableEntry<>(keys.get(index), counts[index]);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.util;
+
+import java.util.*;
+
+/**
+ * An immutable set backed by an array, with an open addressing hash table for lookups.
+ * It is safe to share between threads.
+ *
+ * @param <T> the type of the elements.
+ */
+public final class ArraySet<T> extends AbstractSet<T> {
+    private static final ArraySet<Object> EMPTY = new ArraySet<>(new Object[0]);
+
+    private final Object[] elems;
+    private final int[] table;
+
+    private ArraySet(Object[] elems) {
+        this.elems = elems;
+        table = new int[tableSize(elems.length)];
+        for (int i = 0; i < elems.length; i++) {
+            int slot = slot(elems[i]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ArraySet<T> of(Collection<? extends T> elems) {
+        if (elems.isEmpty()) {
+            return (ArraySet<T>) EMPTY;
+        }
+        return new ArraySet<>(new LinkedHashSet<>(elems).toArray());
+    }
+
+    private static int tableSize(int size) {
+        int res = 2;
+        while (res < 2 * size) {
+            res <<= 1;
+        }
+        return res;
+    }
+
+    private int slot(Object o) {
+        final int h = o.hashCode();
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * @return the position of the element in the array or -1 if it is not contained.
+     */
+    int indexOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+        int slot = slot(o);
+        while (table[slot] != 0) {
+            final int index = table[slot] - 1;
+            if (elems[index].equals(o)) {
+                return index;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return elems.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) elems[index];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int pos;
+
+            @Override
+            public boolean hasNext() {
+                return pos < elems.length;
+            }
+
+            @Override
+            public T next() {
+                if (pos == elems.length) {
+                    throw new NoSuchElementException();
+                }
+                return get(pos++);
+            }
+        };
+    }
+}
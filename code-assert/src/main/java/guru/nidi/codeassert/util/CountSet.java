@@ -18,17 +18,32 @@ package guru.nidi.codeassert.util;
 import java.util.*;
 
 public class CountSet<T> {
-    private final Map<T, Integer> map = new HashMap<>();
+    private Map<T, Integer> map = new HashMap<>();
 
     public void add(T elem) {
+        add(elem, 1);
+    }
+
+    public void add(T elem, int count) {
         final Integer c = map.get(elem);
-        map.put(elem, (c == null ? 0 : c) + 1);
+        map.put(elem, (c == null ? 0 : c) + count);
+    }
+
+    public void clear() {
+        map.clear();
     }
 
     public boolean contains(T elem) {
         return map.containsKey(elem);
     }
 
+    /**
+     * Make this set immutable, so it can be shared between threads after it has been safely published.
+     */
+    public void freeze() {
+        map = new ArrayCountMap<>(map);
+    }
+
     public Map<T, Integer> asMap() {
         return map;
     }
@@ -75,7 +75,6 @@ public class CheckstyleTest {
                         + line(WARNING, "one.top.level.class", TEST, "model/ExampleConcreteClass", 79, "Top-level class ExamplePackageClass has to reside in its own source file.")
                         + line(WARNING, "overload.methods.declaration", MAIN, "config/BaseCollector", 53, "Overload methods should not be split. Previous overloaded method located at line '47'.")
                         + line(WARNING, "overload.methods.declaration", MAIN, "config/BaseCollector", 64, "Overload methods should not be split. Previous overloaded method located at line '51'.")
-                        + line(WARNING, "overload.methods.declaration", MAIN, "model/SourceFileParser", 91, "Overload methods should not be split. Previous overloaded method located at line '66'.")
                         + line(WARNING, "tag.continuation.indent", MAIN, "dependency/DependencyMap", 105, "Line continuation have incorrect indentation level, expected level should be 4."),
                 analyzer.analyze(), hasNoCheckstyleIssues());
     }
@@ -94,7 +93,6 @@ public class CheckstyleTest {
                 ));
 
         assertMatcher(""
-                        + line(ERROR, "assignment.inner.avoid", MAIN, "model/SignatureParser", 254, "Inner assignments should be avoided.")
                         + line(ERROR, "maxParam", MAIN, "jacoco/Coverage", 29, "More than 7 parameters (found 12).")
                         + line(ERROR, "variable.notPrivate", MAIN, "config/CollectorConfig", 27, "Variable 'actions' must be private and have accessor methods.")
                         + line(ERROR, "variable.notPrivate", MAIN, "model/Scope", 28, "Variable 'model' must be private and have accessor methods."),
@@ -16,15 +16,16 @@
 package guru.nidi.codeassert.dependency;
 
 import guru.nidi.codeassert.config.*;
-import guru.nidi.codeassert.model.Model;
-import guru.nidi.codeassert.model.Scope;
+import guru.nidi.codeassert.model.*;
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import static guru.nidi.codeassert.junit.CodeAssertMatchers.*;
 import static java.util.Arrays.asList;
@@ -413,6 +414,182 @@ public class DependencyRulesTest {
         assertEquals(71, result.undefined.size());
     }
 
+    @Test
+    void usageTable() {
+        final DependencyRules rules = DependencyRules.denyAll();
+        final List<DependencyRule> all = new ArrayList<>();
+        add(all, rules.addExternal("java.*"));
+        add(all, rules.addExternal("org.*"));
+        final DependencyRule a = add(all, rules.addRule(dep("a")));
+        final DependencyRule aa = add(all, rules.addRule(dep("a.a")));
+        final DependencyRule b = add(all, rules.addRule(dep("b.*")));
+        final DependencyRule c = add(all, rules.addRule(dep("c*")));
+        final DependencyRule cycle = add(all, rules.addRule(dep("CycleTest")));
+        a.mustBeUsedBy(b).mayBeUsedBy(c, cycle);
+        aa.mustNotBeUsedBy(b, c).mayBeUsedBy(rules.rule(dep("b.a.Ba1")));
+        b.mayBeUsedBy(a, c).mustNotBeUsedBy(rules.rule(dep("b.*")));
+        c.mustBeUsedBy(a).mayBeUsedBy(rules.rule(dep("*")));
+        add(all, rules.addRule(dep("c.a"))).mayBeUsedBy(a, c);
+
+        assertUsageTable(rules, all, Scope.packages(model).graph());
+        assertUsageTable(rules, all, Scope.classes(model).graph());
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    void usageTableSpeed() {
+        final Graph<CodeClass> graph = Scope.classes(Model.from(AnalyzerConfig.maven().main().getClasses())).graph();
+        final DependencyRules rules = DependencyRules.denyAll();
+        final List<DependencyRule> all = new ArrayList<>();
+        for (int i = 0; all.size() < 500; i++) {
+            final String name = graph.element(i % graph.size()).getName();
+            final int cut = i / graph.size();
+            all.add(rules.addRule(cut == 0 ? name : name.substring(0, name.length() - cut) + "*"));
+        }
+        for (int i = 0; i < all.size(); i++) {
+            all.get(i).mayBeUsedBy(all.get((i + 1) % all.size()), rules.rule(CODE_ASSERT + "*"))
+                    .mustNotBeUsedBy(all.get((i + 7) % all.size()));
+            if (i % 10 == 0) {
+                all.get(i).mustBeUsedBy(rules.rule(CODE_ASSERT + "model.*"));
+            }
+        }
+
+        long start = System.nanoTime();
+        long reference = 0;
+        for (int from = 0; from < graph.size(); from++) {
+            for (int to = 0; to < graph.size(); to++) {
+                final CodeClass f = graph.element(from);
+                final CodeClass t = graph.element(to);
+                reference += mostSpecificUsageMatch(all, f, t, RuleAccessor.MUST_BE_USED)
+                        + mostSpecificUsageMatch(all, f, t, RuleAccessor.MAY_BE_USED)
+                        + mostSpecificUsageMatch(all, f, t, RuleAccessor.MUST_NOT_BE_USED);
+            }
+        }
+        final long referenceTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final UsageTable table = rules.usageTable(graph);
+        long lookup = 0;
+        for (int from = 0; from < graph.size(); from++) {
+            for (int to = 0; to < graph.size(); to++) {
+                lookup += table.mustBeUsed.specificity(from, to) + table.mayBeUsed.specificity(from, to)
+                        + table.mustNotBeUsed.specificity(from, to);
+            }
+        }
+        final long lookupTime = System.nanoTime() - start;
+
+        assertEquals(reference, lookup);
+        System.out.printf("%d rules, %d classes: match all rules %d ms, usage table %d ms%n",
+                all.size(), graph.size(), referenceTime / 1_000_000, lookupTime / 1_000_000);
+    }
+
+    @Test
+    void parallel() {
+        final DependencyRules rules = DependencyRules.denyAll().withExternals("java.*", "org.*");
+        for (final CodePackage pack : model.getPackages()) {
+            rules.addRule(pack.getName()).mayUse(rules.rule(dep("a*")), rules.rule(dep("b.*")));
+        }
+        rules.addRule(dep("c")).mustUse(rules.rule(dep("d")));
+        rules.addRule(dep("b.*")).mustNotBeUsedBy(rules.rule(dep("c.a")));
+        rules.addRule(ca("*")).mayBeUsedBy(rules.rule(dep("*")));
+
+        for (final Scope<?> scope : asList(Scope.packages(model), Scope.classes(model))) {
+            final Dependencies serial = rules.analyzeRules(scope);
+            final Dependencies parallel = rules.analyzeRules(scope, 4);
+            assertEquals(serial, parallel);
+            assertEquals(serial.toString(), parallel.toString());
+        }
+    }
+
+    @Test
+    void compiled() throws Exception {
+        final DependencyRules rules = DependencyRules.denyAll().withExternals("java.*", "org.*");
+        final DependencyRule a = rules.addRule(dep("a"));
+        final DependencyRule b = rules.addRule(dep("b"));
+        final DependencyRule c = rules.addRule(dep("c"));
+        a.mustUse(b);
+        b.mayUse(c).mustNotBeUsedBy(c);
+        final Dependencies expected = rules.analyzeRules(Scope.packages(model));
+
+        final DependencyRules compiled = rules.compile();
+        assertTrue(compiled.isCompiled());
+        assertFalse(rules.isCompiled());
+        assertSame(compiled, compiled.compile());
+        assertThrows(IllegalStateException.class, new Executable() {
+            public void execute() {
+                compiled.addRule(dep("d"));
+            }
+        });
+        assertThrows(IllegalStateException.class, new Executable() {
+            public void execute() {
+                compiled.withRules("guru.nidi.codeassert.dependency", new DependencyRuler() {
+                    DependencyRule d;
+                });
+            }
+        });
+
+        a.mayUse(c);
+        rules.addRule(dep("a.a"));
+        assertEquals(expected, compiled.analyzeRules(Scope.packages(model)));
+        assertNotEquals(expected, rules.analyzeRules(Scope.packages(model)));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Dependencies>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final Model copy = Model.from(AnalyzerConfig.maven().mainAndTest("guru/nidi/codeassert/dependency").getClasses());
+                results.add(executor.submit(new Callable<Dependencies>() {
+                    @Override
+                    public Dependencies call() {
+                        return compiled.analyzeRules(Scope.packages(copy));
+                    }
+                }));
+            }
+            for (final Future<Dependencies> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static <T extends UsingElement<T>> void assertUsageTable(DependencyRules rules, List<DependencyRule> all,
+                                                                      Graph<T> graph) {
+        final UsageTable table = rules.usageTable(graph);
+        for (int from = 0; from < graph.size(); from++) {
+            for (int to = 0; to < graph.size(); to++) {
+                final T f = graph.element(from);
+                final T t = graph.element(to);
+                final String msg = f + " -> " + t;
+                assertEquals(mostSpecificUsageMatch(all, f, t, RuleAccessor.MUST_BE_USED),
+                        table.mustBeUsed.specificity(from, to), msg);
+                assertEquals(mostSpecificUsageMatch(all, f, t, RuleAccessor.MAY_BE_USED),
+                        table.mayBeUsed.specificity(from, to), msg);
+                assertEquals(mostSpecificUsageMatch(all, f, t, RuleAccessor.MUST_NOT_BE_USED),
+                        table.mustNotBeUsed.specificity(from, to), msg);
+            }
+        }
+    }
+
+    /**
+     * The reference for the usage table: Match every rule against the used element.
+     */
+    private static <T extends UsingElement<T>> int mostSpecificUsageMatch(List<DependencyRule> rules, T from, T to,
+                                                                          RuleAccessor accessor) {
+        int s = 0;
+        for (final DependencyRule rule : rules) {
+            if (rule.matches(to)) {
+                s = Math.max(s, from.mostSpecificMatch(accessor.access(rule)));
+            }
+        }
+        return s;
+    }
+
+    private static DependencyRule add(List<DependencyRule> rules, DependencyRule rule) {
+        rules.add(rule);
+        return rule;
+    }
+
     private static String ca(String s) {
         return CODE_ASSERT + s;
     }
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.dependency;
+
+import guru.nidi.codeassert.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TarjanTest {
+    @Test
+    void deepCycle() throws IOException {
+        final int size = 100_000;
+        final ModelBuilder builder = new ModelBuilder();
+        for (int i = 0; i < size; i++) {
+            builder.accept(classUsing("p" + i % 10 + "/C" + i, "p" + (i + 1) % 10 + "/C" + (i + 1) % size));
+        }
+        final Graph<CodeClass> graph = Scope.classes(builder.build()).graph();
+        final Set<DependencyMap> cycles = new Tarjan<CodeClass>().analyzeCycles(graph, false);
+        assertEquals(1, cycles.size());
+        assertEquals(size, cycles.iterator().next().getElements().size());
+    }
+
+    @Test
+    void millionEdges() throws IOException {
+        final int groups = 10;
+        final int groupSize = 320;
+        final ModelBuilder builder = new ModelBuilder();
+        for (int g = 0; g < groups; g++) {
+            for (int i = 0; i < groupSize; i++) {
+                //all other classes of the group and the first class of the next group
+                final String[] uses = new String[groupSize];
+                for (int j = 0; j < groupSize; j++) {
+                    uses[j] = j == i ? "q/C" + g : "p" + g + "/C" + j;
+                }
+                builder.accept(classUsing("p" + g + "/C" + i, uses));
+            }
+            builder.accept(g + 1 < groups ? classUsing("q/C" + g, "p" + (g + 1) + "/C0") : classUsing("q/C" + g));
+        }
+        final Graph<CodeClass> graph = Scope.classes(builder.build()).graph();
+        assertTrue(graph.edgeCount() > groups * groupSize * groupSize);
+        final Set<DependencyMap> cycles = new Tarjan<CodeClass>().analyzeCycles(graph, false);
+        assertEquals(groups, cycles.size());
+        for (final DependencyMap cycle : cycles) {
+            assertEquals(groupSize, cycle.getElements().size());
+            for (final String elem : cycle.getElements()) {
+                assertEquals(groupSize - 1, cycle.getDependencies(elem).size());
+            }
+        }
+        assertTrue(new Tarjan<CodeClass>().analyzeCycles(graph, true).isEmpty());
+    }
+
+    private static byte[] classUsing(String name, String... uses) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(2 * uses.length + 5);
+        classConstant(out, 1, name);
+        classConstant(out, 3, "java/lang/Object");
+        for (int i = 0; i < uses.length; i++) {
+            classConstant(out, 5 + 2 * i, uses[i]);
+        }
+        out.writeShort(1);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private static void classConstant(DataOutputStream out, int index, String name) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(7);
+        out.writeShort(index);
+    }
+}
@@ -19,13 +19,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * @author <b>Mike Clark</b>
@@ -54,6 +60,18 @@ public class ClassFileParserTest {
         assertEquals(model("ExampleConcreteClass"), clazz.getName());
     }
 
+    @Test
+    void header() throws IOException {
+        final File file = Path.testClass("ExampleAbstractClass");
+        final ClassHeader header = parser.parseHeader(ClassFileParser.read(file), file.getPath(), new Symbols());
+        assertEquals(model("ExampleAbstractClass"), header.getName());
+        assertEquals("guru.nidi.codeassert.model", header.getPackageName());
+        assertEquals("java.lang.Object", header.getSuperName());
+        assertEquals(asList(model("ExampleInterface"), "java.io.Serializable"), header.getInterfaces());
+        assertEquals(52, header.getMajorVersion());
+        assertEquals(file.getPath(), header.getLocation());
+    }
+
     @Test
     void classSource() throws IOException {
         final CodeClass clazz = parse(Path.testClass("ExampleConcreteClass"));
@@ -179,6 +197,91 @@ public class ClassFileParserTest {
         assertCollectionEquals(clazz.usedPackages(), new CodePackage("java.lang"));
     }
 
+    @Test
+    void mappedBuffer() throws IOException {
+        final File file = Path.testClass("ExampleConcreteClass");
+        final CodeClass clazz;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            clazz = parser.parse(mapped, new Model());
+        }
+        final CodeClass expected = parse(file);
+        assertEquals(expected.getName(), clazz.getName());
+        assertEquals(expected.getTotalSize(), clazz.getTotalSize());
+        assertEquals(expected.getCodeSize(), clazz.getCodeSize());
+        assertEquals(toString(expected.usedClassCounts()), toString(clazz.usedClassCounts()));
+    }
+
+    @Test
+    void truncatedClassFile() throws IOException {
+        final byte[] data = new byte[100];
+        ByteBuffer.wrap(data).putInt(0xCAFEBABE).putShort((short) 0).putShort((short) 52).putShort((short) 30);
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                parser.parse(ByteBuffer.wrap(data), new Model());
+            }
+        });
+    }
+
+    @Test
+    void codeIsNotCopied() throws IOException {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Needs allocation measurement");
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        final int codeLength = 1_000_000;
+        final ByteBuffer data = classWithCode(codeLength);
+        for (int i = 0; i < 100; i++) {
+            parser.parse(data, new Model());
+        }
+        final long id = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(id);
+        final CodeClass clazz = parser.parse(data, new Model());
+        final long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals(codeLength, clazz.getCodeSize());
+        assertTrue(allocated < codeLength / 10, "Allocated " + allocated + " bytes");
+    }
+
+    private ByteBuffer classWithCode(int codeLength) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(8);
+        utf8(out, "Big");
+        clazz(out, 1);
+        utf8(out, "java/lang/Object");
+        clazz(out, 3);
+        utf8(out, "run");
+        utf8(out, "()V");
+        utf8(out, "Code");
+        out.writeShort(1);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);
+        out.writeShort(7);
+        out.writeInt(codeLength);
+        out.write(new byte[codeLength]);
+        out.writeShort(0);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private void utf8(DataOutputStream out, String s) throws IOException {
+        out.writeByte(Constant.UTF8);
+        out.writeUTF(s);
+    }
+
+    private void clazz(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(Constant.CLASS);
+        out.writeShort(nameIndex);
+    }
+
     @Test
     void exampleClassFileFromTimDrury() throws IOException {
         parser.parse(ClassFileParser.class.getResourceAsStream("/example_class1.bin"), new Model());
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantPoolTest {
+    private final Symbols symbols = new Symbols();
+    private ConstantPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(6);
+        out.writeByte(Constant.UTF8);
+        out.writeUTF("java/lang/String");
+        out.writeByte(Constant.CLASS);
+        out.writeShort(1);
+        out.writeByte(Constant.LONG);
+        out.writeLong(42);
+        out.writeByte(Constant.UTF8);
+        out.writeUTF("ä/€");
+        pool = ConstantPool.fromData(ByteBuffer.wrap(bytes.toByteArray()), symbols);
+    }
+
+    @Test
+    void utf8() throws IOException {
+        assertEquals("java/lang/String", pool.getUtf8(1));
+        assertEquals("ä/€", pool.getUtf8(5));
+        assertSame(pool.getUtf8(1), pool.getUtf8(1));
+    }
+
+    @Test
+    void symbol() throws IOException {
+        final String name = new String("java/lang/String");
+        assertSame(name, symbols.intern(name));
+        assertSame(name, pool.getSymbol(1));
+        assertNotSame(pool.getUtf8(1), pool.getSymbol(1));
+    }
+
+    @Test
+    void className() throws IOException {
+        assertEquals("java.lang.String", pool.getClassConstantName(2));
+        assertSame(pool.getClassConstantName(2), pool.getClassConstantName(2));
+        assertEquals("", pool.getClassConstantName(0));
+    }
+
+    @Test
+    void bigConstantsUseTwoEntries() throws IOException {
+        assertEquals(6, pool.size());
+        assertEquals(Constant.LONG, pool.getTag(3));
+        assertEquals(0, pool.getTag(4));
+    }
+
+    @Test
+    void illegalAccess() {
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                pool.getUtf8(2);
+            }
+        });
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                pool.getClassConstantName(1);
+            }
+        });
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                pool.getTag(6);
+            }
+        });
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.config.AnalyzerConfig;
+import guru.nidi.codeassert.config.Location;
+import guru.nidi.codeassert.config.LocationMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphTest {
+    private final Model model = Model.from(AnalyzerConfig.maven().mainAndTest().getClasses());
+
+    @Test
+    void classes() {
+        final Graph<CodeClass> graph = model.classGraph();
+        assertEquals(model.getClasses().size(), graph.size());
+        for (int i = 0; i < graph.size(); i++) {
+            final CodeClass clazz = graph.element(i);
+            assertEquals(i, graph.id(clazz));
+            final Map<CodeClass, Integer> counts = new HashMap<>();
+            for (int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++) {
+                counts.put(graph.element(graph.target(e)), graph.count(e));
+            }
+            assertEquals(clazz.usedClassCounts(), counts);
+        }
+    }
+
+    @Test
+    void packages() {
+        final Graph<CodePackage> graph = model.packageGraph();
+        assertEquals(model.getPackages().size(), graph.size());
+        for (int i = 0; i < graph.size(); i++) {
+            final CodePackage pack = graph.element(i);
+            final List<CodePackage> uses = new ArrayList<>();
+            for (int e = graph.edgeStart(i); e < graph.edgeEnd(i); e++) {
+                uses.add(graph.element(graph.target(e)));
+                assertTrue(graph.count(e) > 0);
+            }
+            assertEquals(new ArrayList<>(pack.uses()), uses);
+        }
+    }
+
+    @Test
+    void uses() {
+        final Graph<CodePackage> graph = model.packageGraph();
+        for (int from = 0; from < graph.size(); from++) {
+            for (int to = 0; to < graph.size(); to++) {
+                assertEquals(graph.element(from).uses(graph.element(to)), graph.uses(from, to));
+            }
+        }
+    }
+
+    @Test
+    void matching() {
+        final Graph<CodePackage> graph = model.packageGraph();
+        final LocationMatcher matcher = new LocationMatcher(Location.of("guru.nidi.codeassert.*"));
+        final List<CodePackage> expected = new ArrayList<>();
+        for (int i = 0; i < graph.size(); i++) {
+            if (graph.element(i).isMatchedBy(matcher)) {
+                expected.add(graph.element(i));
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, graph.elements(graph.matching(matcher)));
+        assertEquals(-1, graph.id(new CodePackage("not.in.graph")));
+    }
+
+    @Test
+    void matchingIndex() {
+        final String[] patterns = {"*", "guru.nidi.codeassert", "guru.nidi.codeassert.*", "guru.nidi.codeassert.+",
+                "*.nidi.codeassert.*", "*.model", "*model*", "+.model.*", "java.*", "java.+", "java.lang.String",
+                "guru.nidi.codeassert.model.Code*", "*.Model", "*Test", "guru.nidi.codeassert.model.p1.*",
+                "guru.nidi.codeassert.model.ExampleConcreteClass", "org.junit.jupiter.api.*", "guru/*Test",
+                "*#foo", "guru.nidi.*/Graph", "Example*", "not.there.*"};
+        final Graph<CodePackage> packages = model.packageGraph();
+        final Graph<CodeClass> classes = model.classGraph();
+        for (final String pattern : patterns) {
+            final LocationMatcher matcher = new LocationMatcher(Location.of(pattern));
+            assertArrayEquals(bruteForce(packages, matcher), packages.matching(matcher), pattern);
+            assertArrayEquals(bruteForce(classes, matcher), classes.matching(matcher), pattern);
+            assertSame(classes.matching(matcher), classes.matching(new LocationMatcher(Location.of(pattern))));
+        }
+    }
+
+    private static <T extends UsingElement<T>> int[] bruteForce(Graph<T> graph, LocationMatcher matcher) {
+        final List<Integer> res = new ArrayList<>();
+        for (int i = 0; i < graph.size(); i++) {
+            if (graph.element(i).isMatchedBy(matcher)) {
+                res.add(i);
+            }
+        }
+        final int[] ids = new int[res.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = res.get(i);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.config.AnalyzerConfig;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelCacheTest {
+    private static final File DIR = new File("target/model-cache");
+
+    private final Model model = new Model();
+    private final ModelCache cache = new ModelCache(new File(DIR, "cache"));
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileUtils.deleteDirectory(DIR);
+    }
+
+    @Test
+    void cachedEqualsParsed() {
+        final List<File> files = new ArrayList<>(AnalyzerConfig.maven().main().getClasses());
+        files.add(Path.testResource("test.jar"));
+        final String parsed = ModelTest.describe(Model.from(files));
+        final File dir = new File(DIR, "cache");
+        assertEquals(parsed, ModelTest.describe(new Model().withCache(dir).and(files)));
+        assertEquals(files.size(), dir.list().length);
+        assertEquals(parsed, ModelTest.describe(new Model().withCache(dir).and(files)));
+        assertEquals(parsed, ModelTest.describe(new Model().withCache(dir).and(files, 4)));
+    }
+
+    @Test
+    void cachedMemberDependencies() {
+        final List<File> files = AnalyzerConfig.maven().main().getClasses();
+        final String parsed = ModelTest.describe(new Model().withMemberDependencies().and(files));
+        final File dir = new File(DIR, "cache");
+        new Model().withCache(dir).and(files);
+        assertEquals(parsed, ModelTest.describe(new Model().withCache(dir).withMemberDependencies().and(files)));
+        assertEquals(parsed, ModelTest.describe(new Model().withCache(dir).withMemberDependencies().and(files)));
+    }
+
+    @Test
+    void savedEqualsParsed() {
+        final AnalyzerConfig config = AnalyzerConfig.maven().main();
+        final List<File> files = new ArrayList<>(config.getClasses());
+        files.add(Path.testResource("test.jar"));
+        final Model parsed = new Model().withMemberDependencies().and(files).parseSources(config.getSources(), UTF_8, 1);
+        final File file = new File(DIR, "saved/code-assert.model");
+        parsed.save(file);
+        final Model loaded = Model.load(file);
+        assertEquals(ModelTest.describe(parsed), ModelTest.describe(loaded));
+        assertEquals(lines(parsed), lines(loaded));
+        assertTrue(parsed.classes.get("guru.nidi.codeassert.model.Model").getTotalLines() > 0);
+    }
+
+    private static Map<String, String> lines(Model model) {
+        final Map<String, String> res = new TreeMap<>();
+        for (final CodeClass clazz : model.getClasses()) {
+            res.put(clazz.getName(), clazz.getCodeLines() + " " + clazz.getCommentLines() + " "
+                    + clazz.getEmptyLines() + " " + clazz.getTotalLines());
+        }
+        return res;
+    }
+
+    @Test
+    void unchangedFile() throws IOException {
+        final File file = copy("ExampleConcreteClass");
+        assertNull(cache.load(file, model));
+        cache.store(file, parse(file));
+
+        final ModelTask.Part part = cache.load(file, model);
+        assertNotNull(part);
+        assertEquals(ModelTest.describe(parse(file).model), ModelTest.describe(part.model));
+        assertEquals(1, part.parsed.size());
+    }
+
+    @Test
+    void touchedFile() throws IOException {
+        final File file = copy("ExampleConcreteClass");
+        cache.store(file, parse(file));
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNotNull(cache.load(file, model));
+    }
+
+    @Test
+    void changedFile() throws IOException {
+        final File file = copy("ExampleConcreteClass");
+        cache.store(file, parse(file));
+        final byte[] data = FileUtils.readFileToByteArray(file);
+        data[data.length - 1]++;
+        FileUtils.writeByteArrayToFile(file, data);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNull(cache.load(file, model));
+
+        FileUtils.copyFile(Path.testClass("ExampleInterface"), file);
+        assertNull(cache.load(file, model));
+    }
+
+    @Test
+    void otherFilter() throws IOException {
+        final File file = copy("ExampleConcreteClass");
+        cache.store(file, parse(file));
+        assertNotNull(cache.load(file, new Model()));
+        assertNull(cache.load(file, new Model().excluding("*.p2.*")));
+    }
+
+    @Test
+    void invalidEntry() throws IOException {
+        final File file = copy("ExampleConcreteClass");
+        cache.store(file, parse(file));
+        for (final File entry : new File(DIR, "cache").listFiles()) {
+            final byte[] data = FileUtils.readFileToByteArray(entry);
+            FileUtils.writeByteArrayToFile(entry, Arrays.copyOf(data, data.length / 2));
+        }
+        assertNull(cache.load(file, model));
+    }
+
+    private File copy(String name) throws IOException {
+        final File file = new File(DIR, name + ".class");
+        FileUtils.copyFile(Path.testClass(name), file);
+        return file;
+    }
+
+    private ModelTask.Part parse(File file) throws IOException {
+        final ModelTask.Part part = new ModelTask.Part(model.emptyCopy());
+        part.parsed.add(new ClassFileParser().parse(file, part.model));
+        return part;
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.config.AnalyzerConfig;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ModelTest {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private static final File UPDATED = new File("target/model-update/Updated.class");
+
+    private final List<File> files = AnalyzerConfig.maven().mainAndTest().getClasses();
+
+    @Test
+    void parallelEqualsSerial() {
+        final List<File> inputs = new ArrayList<>(files);
+        inputs.add(Path.testResource("test.jar"));
+        assertEquals(describe(Model.from(inputs)), describe(Model.from(inputs, 4)));
+        assertEquals(describe(new Model().withMemberDependencies().and(inputs)),
+                describe(new Model().withMemberDependencies().and(inputs, 4)));
+    }
+
+    @Test
+    void classBytes() throws IOException {
+        final Map<String, ByteBuffer> classes = new LinkedHashMap<>();
+        final ModelBuilder builder = new ModelBuilder();
+        for (final File file : files) {
+            final byte[] data = Files.readAllBytes(file.toPath());
+            final ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 1).put((byte) 0).put(data);
+            direct.position(1);
+            classes.put(file.getPath(), direct);
+            builder.accept(data);
+        }
+        final String expected = describe(Model.from(files));
+        assertEquals(expected, describe(Model.fromClassBytes(classes)));
+        assertEquals(expected, describe(new Model().andClassBytes(classes, 4)));
+        assertEquals(expected, describe(builder.build()));
+        assertEquals(1, classes.values().iterator().next().position());
+    }
+
+    @Test
+    void headers() {
+        final List<File> inputs = new ArrayList<>(files);
+        inputs.add(Path.testResource("test.jar"));
+        final List<ClassHeader> headers = ClassHeader.scan(inputs, 1);
+        assertEquals(headers.toString(), ClassHeader.scan(inputs, 4).toString());
+        final Set<String> names = new HashSet<>();
+        for (final ClassHeader header : headers) {
+            names.add(header.getName());
+        }
+        final Set<String> parsed = new HashSet<>();
+        for (final CodeClass clazz : Model.from(inputs).getClasses()) {
+            if (clazz.isParsed()) {
+                parsed.add(clazz.getName());
+            }
+        }
+        assertEquals(parsed, names);
+    }
+
+    @Test
+    void frozen() {
+        final Model model = Model.from(files);
+        final Model frozen = model.freeze();
+        assertTrue(frozen.isFrozen());
+        assertFalse(model.isFrozen());
+        assertSame(frozen, frozen.freeze());
+        assertEquals(describe(model), describe(frozen));
+
+        final CodeClass clazz = frozen.classes.get("guru.nidi.codeassert.model.ExampleConcreteClass");
+        assertThrows(UnsupportedOperationException.class, new Executable() {
+            public void execute() {
+                clazz.usedClassCounts().put(clazz, 1);
+            }
+        });
+        assertThrows(UnsupportedOperationException.class, new Executable() {
+            public void execute() {
+                clazz.getPackage().getClasses().clear();
+            }
+        });
+        assertThrows(UnsupportedOperationException.class, new Executable() {
+            public void execute() {
+                frozen.getClasses().remove(clazz);
+            }
+        });
+        assertThrows(IllegalStateException.class, new Executable() {
+            public void execute() {
+                frozen.and(Path.testClass("ExampleInterface"));
+            }
+        });
+        model.and(Path.testResource("test.jar"));
+        assertFalse(describe(model).equals(describe(frozen)));
+    }
+
+    @Test
+    void nestedArchive() throws IOException {
+        final File fat = new File("target/model-fat.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(fat))) {
+            addEntry(out, "lib/test.jar", Path.testResource("test.jar"));
+            addEntry(out, "META-INF/resource.txt", Path.testResource("test.jar"));
+            addEntry(out, "ExampleInterface.class", Path.testClass("ExampleInterface"));
+        }
+        final Model expected = Model.from(Path.testResource("test.jar"), Path.testClass("ExampleInterface"));
+        assertEquals(describe(expected), describe(Model.from(fat)));
+        assertEquals(describe(expected), describe(Model.from(singletonList(fat), 4)));
+    }
+
+    private void addEntry(ZipOutputStream out, String name, File file) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        FileUtils.copyFile(file, out);
+        out.closeEntry();
+    }
+
+    @Test
+    void including() {
+        final List<File> p1 = new ArrayList<>();
+        for (final File file : files) {
+            if (file.getParentFile().getName().equals("p1")) {
+                p1.add(file);
+            }
+        }
+        final String expected = describe(Model.from(p1));
+        assertEquals(expected, describe(new Model().including("*.p1.*").and(files)));
+        assertEquals(expected, describe(new Model().including("*.p1.*").and(files, 4)));
+    }
+
+    @Test
+    void excluding() {
+        final Model model = new Model().excluding("*.p2.*").and(files);
+        final CodeClass exampleEnum = model.classes.get("guru.nidi.codeassert.model.p2.ExampleEnum");
+        assertFalse(exampleEnum.isParsed());
+        assertTrue(exampleEnum.usedClasses().isEmpty());
+        assertTrue(model.classes.get("guru.nidi.codeassert.model.ExampleConcreteClass").uses().contains(exampleEnum));
+    }
+
+    @Test
+    void memberDependencies() {
+        final Model model = new Model().withMemberDependencies()
+                .and(Path.testClass("ExampleConcreteClass"), Path.clazz("CodeClass"));
+        final CodeClass example = model.classes.get("guru.nidi.codeassert.model.ExampleConcreteClass");
+        assertEquals("[guru.nidi.codeassert.model.ExampleAbstractClass.<init>()V]",
+                method(example, "<init>").getUsedMembers().toString());
+        assertEquals("[java.net.URL.<init>(Ljava/lang/String;)V]", method(example, "a").getUsedMembers().toString());
+        assertEquals("[]", method(example, "f").getUsedMembers().toString());
+        final CodeClass codeClass = model.classes.get("guru.nidi.codeassert.model.CodeClass");
+        assertEquals("[guru.nidi.codeassert.model.CodeClass.name:Ljava/lang/String;]",
+                method(codeClass, "getName").getUsedMembers().toString());
+
+        final CodeClass shallow = Model.from(Path.testClass("ExampleConcreteClass")).classes.get(example.getName());
+        assertSame(Collections.emptyList(), method(shallow, "a").getUsedMembers());
+    }
+
+    private static MemberInfo method(CodeClass clazz, String name) {
+        for (final MemberInfo method : clazz.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError("Method " + name + " not found in " + clazz);
+    }
+
+    @Test
+    void sources() throws IOException {
+        final AnalyzerConfig config = AnalyzerConfig.maven().main();
+        final Model model = Model.from(config.getClasses()).parseSources(config.getSources(), UTF_8, 4);
+        final CodeClass clazz = model.classes.get("guru.nidi.codeassert.model.Model");
+        final File source = new File("src/main/java/guru/nidi/codeassert/model/Model.java");
+        assertEquals(Files.readAllLines(source.toPath(), UTF_8).size(), clazz.getTotalLines());
+        assertTrue(clazz.getCodeLines() > clazz.getCommentLines());
+        assertTrue(clazz.getCommentLines() > clazz.getEmptyLines());
+        final CodeClass inner = model.classes.get("guru.nidi.codeassert.model.ModelTask$Files");
+        assertEquals(model.classes.get("guru.nidi.codeassert.model.ModelTask").getTotalLines(), inner.getTotalLines());
+
+        final Model serial = Model.from(config.getClasses()).parseSources(config.getSources(), UTF_8, 1);
+        for (final CodeClass c : serial.getClasses()) {
+            assertEquals(c.getCodeLines(), model.classes.get(c.getName()).getCodeLines());
+            assertEquals(c.getTotalLines(), model.classes.get(c.getName()).getTotalLines());
+        }
+    }
+
+    @Test
+    void referencedClassesHaveNoCollections() {
+        final Model model = Model.from(files);
+        int referenced = 0;
+        for (final CodeClass clazz : model.getClasses()) {
+            if (!clazz.isParsed()) {
+                referenced++;
+                assertSame(Collections.emptyMap(), clazz.usedClassCounts());
+                assertSame(Collections.emptyMap(), clazz.usedPackageCounts());
+                assertSame(Collections.emptySet(), clazz.getAnnotations());
+                assertSame(Collections.emptyList(), clazz.getFields());
+                assertSame(Collections.emptyList(), clazz.getMethods());
+            }
+        }
+        assertTrue(referenced > 0);
+    }
+
+    @Test
+    void compactMembers() throws IllegalAccessException {
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        long size = 0;
+        int count = 0;
+        for (final CodeClass clazz : Model.from(files).getClasses()) {
+            for (final MemberInfo member : clazz.getFields()) {
+                size += retainedSize(member, seen);
+                count++;
+            }
+            for (final MemberInfo member : clazz.getMethods()) {
+                size += retainedSize(member, seen);
+                count++;
+            }
+        }
+        assertTrue(size / count < 48, "A member retains " + size / count + " bytes");
+    }
+
+    /**
+     * Estimate the heap size of an object and everything it references, assuming compressed references.
+     * Objects that have been seen before and strings (which are shared by the whole model) are not counted.
+     */
+    private static long retainedSize(Object obj, Set<Object> seen) throws IllegalAccessException {
+        if (obj == null || obj instanceof String || !seen.add(obj)) {
+            return 0;
+        }
+        final Class<?> type = obj.getClass();
+        if (type.isArray()) {
+            final int length = Array.getLength(obj);
+            final Class<?> component = type.getComponentType();
+            long size = align(16 + length * (component.isPrimitive() ? primitiveSize(component) : 4));
+            if (!component.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    size += retainedSize(Array.get(obj, i), seen);
+                }
+            }
+            return size;
+        }
+        long size = 12;
+        long referenced = 0;
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    if (field.getType().isPrimitive()) {
+                        size += primitiveSize(field.getType());
+                    } else {
+                        size += 4;
+                        field.setAccessible(true);
+                        referenced += retainedSize(field.get(obj), seen);
+                    }
+                }
+            }
+        }
+        return align(size) + referenced;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        return type == short.class || type == char.class ? 2 : 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7;
+    }
+
+    @Test
+    void membersShareNames() {
+        final Model model = Model.from(files, 4);
+        final Map<String, String> names = new HashMap<>();
+        for (final CodeClass clazz : model.getClasses()) {
+            for (final MemberInfo method : clazz.getMethods()) {
+                assertSameName(names, method.getName());
+                assertSameName(names, method.descriptor);
+            }
+        }
+        assertTrue(names.containsKey("<init>"));
+    }
+
+    private void assertSameName(Map<String, String> names, String name) {
+        final String known = names.get(name);
+        if (known == null) {
+            names.put(name, name);
+        } else {
+            assertSame(known, name);
+        }
+    }
+
+    @Test
+    void updateRemoved() throws IOException {
+        final List<File> main = AnalyzerConfig.maven().main().getClasses();
+        final Model model = Model.from(with(main, "ExampleConcreteClass"));
+        model.update(Collections.<File>emptyList(), singletonList(UPDATED));
+        assertEquals(describe(Model.from(main)), describe(model));
+    }
+
+    @Test
+    void updateChanged() throws IOException {
+        final List<File> main = AnalyzerConfig.maven().main().getClasses();
+        final Model model = Model.from(with(main, "ExampleConcreteClass"));
+        model.update(singletonList(UPDATED), Collections.<File>emptyList());
+        assertEquals(describe(Model.from(with(main, "ExampleConcreteClass"))), describe(model));
+        FileUtils.copyFile(Path.testClass("ExampleInterface"), UPDATED);
+        model.update(singletonList(UPDATED), Collections.<File>emptyList());
+        assertEquals(describe(Model.from(with(main, "ExampleInterface"))), describe(model));
+    }
+
+    @Test
+    void updateAdded() throws IOException {
+        final List<File> main = AnalyzerConfig.maven().main().getClasses();
+        final Model model = Model.from(main);
+        final List<File> withEnum = with(main, "p2/ExampleEnum");
+        model.update(singletonList(UPDATED), Collections.<File>emptyList());
+        assertEquals(describe(Model.from(withEnum)), describe(model));
+    }
+
+    @Test
+    void updateResetsLines() {
+        final AnalyzerConfig config = AnalyzerConfig.maven().main();
+        final Model model = Model.from(config.getClasses()).parseSources(config.getSources(), UTF_8, 1);
+        final CodeClass updated = model.classes.get("guru.nidi.codeassert.model.Model");
+        final int lines = updated.getTotalLines();
+        final int other = model.classes.get("guru.nidi.codeassert.model.CodeClass").getTotalLines();
+        model.update(singletonList(new File("target/classes/guru/nidi/codeassert/model/Model.class")),
+                Collections.<File>emptyList());
+        assertEquals(0, updated.getTotalLines());
+        assertEquals(0, updated.getCodeLines());
+        assertEquals(other, model.classes.get("guru.nidi.codeassert.model.CodeClass").getTotalLines());
+        model.parseSources(config.getSources(), UTF_8, 1);
+        assertEquals(lines, updated.getTotalLines());
+    }
+
+    private List<File> with(List<File> files, String clazz) throws IOException {
+        FileUtils.copyFile(Path.testClass(clazz), UPDATED);
+        final List<File> res = new ArrayList<>(files);
+        res.add(UPDATED);
+        return res;
+    }
+
+    @Test
+    @Disabled("Benchmark, run manually")
+    void parallelSpeedup() {
+        assumeTrue(CORES >= 4, "Needs at least 4 cores");
+        final List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            inputs.addAll(files);
+        }
+        final long serial = bestTime(inputs, 1);
+        final long parallel = bestTime(inputs, 4);
+        System.out.printf("%d files: serial %d ms, 4 threads %d ms, speedup %.2f%n",
+                inputs.size(), serial / 1_000_000, parallel / 1_000_000, (double) serial / parallel);
+    }
+
+    private long bestTime(List<File> inputs, int parallelism) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            final long start = System.nanoTime();
+            Model.from(inputs, parallelism);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static String describe(Model model) {
+        final StringBuilder s = new StringBuilder();
+        for (final CodePackage pack : sorted(model.getPackages())) {
+            s.append(pack).append(" uses=").append(pack.uses())
+                    .append(" classes=").append(sorted(pack.getClasses()))
+                    .append(" annotations=").append(sorted(pack.getAnnotations())).append('\n');
+        }
+        for (final CodeClass clazz : sorted(model.getClasses())) {
+            s.append(clazz).append(" source=").append(clazz.getSourceFile())
+                    .append(" size=").append(clazz.getCodeSize()).append('/').append(clazz.getTotalSize())
+                    .append(" concrete=").append(clazz.isConcrete())
+                    .append(" classes=").append(new TreeMap<>(names(clazz.usedClassCounts())))
+                    .append(" packages=").append(new TreeMap<>(names(clazz.usedPackageCounts())))
+                    .append(" annotations=").append(sorted(clazz.getAnnotations()))
+                    .append(" fields=").append(members(clazz.getFields()))
+                    .append(" methods=").append(members(clazz.getMethods())).append('\n');
+        }
+        return s.toString();
+    }
+
+    private static List<String> members(List<MemberInfo> members) {
+        final List<String> res = new ArrayList<>();
+        for (final MemberInfo member : members) {
+            res.add(member.getName() + ":" + member.getAccessFlags() + ":" + member.getCodeSize()
+                    + ":" + member.getUsedMembers());
+        }
+        return res;
+    }
+
+    private static Map<String, Integer> names(Map<?, Integer> counts) {
+        final Map<String, Integer> res = new HashMap<>();
+        for (final Map.Entry<?, Integer> entry : counts.entrySet()) {
+            res.put(entry.getKey().toString(), entry.getValue());
+        }
+        return res;
+    }
+
+    private static <T> List<T> sorted(Collection<T> elems) {
+        final List<T> res = new ArrayList<>(elems);
+        Collections.sort(res, new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+        return res;
+    }
+}
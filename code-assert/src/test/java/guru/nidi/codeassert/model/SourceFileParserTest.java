@@ -21,8 +21,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.io.StringReader;
 
-import static guru.nidi.codeassert.config.Language.JAVA;
-import static guru.nidi.codeassert.config.Language.KOTLIN;
+import static guru.nidi.codeassert.config.Language.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class SourceFileParserTest {
@@ -59,6 +58,40 @@ class SourceFileParserTest {
         assertLines(2, 4, 0, 6, KOTLIN, "line\n/* level 1\n/* level 2\n*/\n*/\nlast");
     }
 
+    @Test
+    void indentedComment() throws IOException {
+        assertLines(2, 3, 0, 4, JAVA, "line\n    /**\n     * doc */\n    code(); // comment");
+    }
+
+    @Test
+    void characters() throws IOException {
+        assertLines(3, 1, 0, 3, JAVA, "line\nc = '\"'; d = '\\''; // comment\nlast");
+        assertLines(3, 1, 0, 3, SCALA, "line\nval s = 'sym; // comment\nlast");
+    }
+
+    @Test
+    void textBlocks() throws IOException {
+        assertLines(5, 1, 1, 5, JAVA, "line\ns = \"\"\"\n  /* no comment\n\n  \\\"\"\" still text\"\"\"; //");
+        assertLines(4, 1, 0, 4, JAVA, "line\ns = \"\"\"\n  text\"\"\"; //comment\nlast");
+    }
+
+    @Test
+    void emptyAndWindowsLines() throws IOException {
+        assertLines(0, 0, 0, 0, JAVA, "");
+        assertLines(3, 1, 1, 4, JAVA, "line\r\n\r\n//comment\r\nlast\r\n");
+    }
+
+    @Test
+    void scala() throws IOException {
+        assertLines(4, 3, 0, 6, SCALA, "line\n/* level 1\n/* level 2 */\n*/ s\"\"\"\n// no comment\n\"\"\"");
+    }
+
+    @Test
+    void groovy() throws IOException {
+        assertLines(5, 1, 0, 5, GROOVY, "line\ns = '// no comment'\nt = '''\n/* no comment\n''' // comment");
+        assertLines(2, 1, 0, 3, GROOVY, "line\n/* /* no nesting */\n*/");
+    }
+
     private void assertLines(int code, int comment, int empty, int total, Language language, String source) throws IOException {
         final CodeClass clazz = new CodeClass("test", null);
         SourceFileParser.parse(clazz, language, new StringReader(source));
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.model;
+
+import guru.nidi.codeassert.AnalyzerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static guru.nidi.codeassert.model.SignatureParser.Source.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeCacheTest {
+    private final TypeCache types = new TypeCache();
+
+    @Test
+    void descriptor() {
+        assertArrayEquals(new String[]{"java.lang.String", "a.B", "java.lang.String"},
+                types.descriptorTypes("(ILjava/lang/String;[[La/B;)Ljava/lang/String;"));
+        assertArrayEquals(new String[]{"a.B"}, types.descriptorTypes("[La.B;"));
+        assertSame(TypeCache.NONE, types.descriptorTypes("(IJ)[Z"));
+    }
+
+    @Test
+    void cached() {
+        final String descriptor = "(Ljava/util/List;)V";
+        assertSame(types.descriptorTypes(descriptor), types.descriptorTypes(new String(descriptor)));
+        final String signature = "Ljava/util/List<Ljava/lang/String;>;";
+        assertSame(types.signatureTypes(FIELD, signature), types.signatureTypes(FIELD, new String(signature)));
+    }
+
+    @Test
+    void signature() {
+        assertArrayEquals(new String[]{"java.lang.String", "java.util.List", "java.util.Map"},
+                types.signatureTypes(FIELD, "Ljava/util/Map<Ljava/lang/String;Ljava/util/List<Ljava/lang/String;>;>;"));
+        assertArrayEquals(new String[]{"a.B", "a.Outer"},
+                types.signatureTypes(FIELD, "La/Outer$Inner<La/B;>.Deep<TT;>;"));
+        assertArrayEquals(new String[]{"java.lang.Number", "java.lang.Comparable", "java.lang.Object"},
+                types.signatureTypes(CLASS, "<T:Ljava/lang/Number;:Ljava/lang/Comparable<TT;>;>Ljava/lang/Object;"));
+        assertArrayEquals(new String[]{"java.lang.Exception", "java.util.List", "java.io.IOException"},
+                types.signatureTypes(METHOD, "<E:Ljava/lang/Exception;>(I[Ljava/util/List<*>;)V^Ljava/io/IOException;^TE;"));
+    }
+
+    @Test
+    void invalidSignature() {
+        assertThrows(AnalyzerException.class, new Executable() {
+            public void execute() {
+                types.signatureTypes(FIELD, "La/B");
+            }
+        });
+    }
+}
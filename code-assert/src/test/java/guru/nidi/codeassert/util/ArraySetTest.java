@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.codeassert.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArraySetTest {
+    @Test
+    void set() {
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("e" + i);
+        }
+        final ArraySet<String> set = ArraySet.of(expected);
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+        assertTrue(set.contains("e42"));
+        assertFalse(set.contains("e100"));
+        assertFalse(set.contains(null));
+    }
+
+    @Test
+    void duplicatesAndOrder() {
+        assertEquals(asList("b", "a", "c"), new ArrayList<>(ArraySet.of(asList("b", "a", "b", "c", "a"))));
+        assertTrue(ArraySet.of(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void countMap() {
+        final CountSet<String> counts = new CountSet<>();
+        counts.add("a");
+        counts.add("b", 3);
+        counts.add("a");
+        final Map<String, Integer> expected = new HashMap<>(counts.asMap());
+        counts.freeze();
+        assertEquals(expected, counts.asMap());
+        assertEquals(Integer.valueOf(3), counts.asMap().get("b"));
+        assertNull(counts.asMap().get("c"));
+        assertTrue(counts.contains("a"));
+        assertEquals(new HashSet<>(asList("a", "b")), counts.asSet());
+    }
+
+    @Test
+    void immutable() {
+        final CountSet<String> counts = new CountSet<>();
+        counts.add("a");
+        counts.freeze();
+        try {
+            counts.add("a");
+            fail("Frozen CountSet must not be changed");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+        final Iterator<String> it = ArraySet.of(asList("a", "b")).iterator();
+        it.next();
+        try {
+            it.remove();
+            fail("ArraySet must not be changed");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+}